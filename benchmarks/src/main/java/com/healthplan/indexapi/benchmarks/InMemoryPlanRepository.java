@@ -0,0 +1,89 @@
+package com.healthplan.indexapi.benchmarks;
+
+import com.healthplan.indexapi.model.PlanEntity;
+import com.healthplan.indexapi.repository.PlanRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory PlanRepository with the methods PlanService uses
+ * Documents are copied on write and read, like a round trip through MongoDB
+ */
+final class InMemoryPlanRepository implements InvocationHandler {
+
+    private final Map<String, PlanEntity> documents = new ConcurrentHashMap<>();
+
+    private InMemoryPlanRepository() {
+    }
+
+    static PlanRepository create() {
+        return (PlanRepository) Proxy.newProxyInstance(PlanRepository.class.getClassLoader(),
+                new Class<?>[]{PlanRepository.class}, new InMemoryPlanRepository());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "insertPlans" -> { // outbox records dropped, no plan is skipped
+                write((List<PlanEntity>) args[0], List.of());
+                yield Set.of();
+            }
+            case "writePlanChange" -> { // single-threaded benchmarks: the version condition always holds
+                write((List<PlanEntity>) args[2], (Collection<String>) args[3]);
+                yield true;
+            }
+            case "existsById" -> documents.containsKey((String) args[0]);
+            case "findById", "findETagById" -> Optional.ofNullable(documents.get((String) args[0])).map(this::copy);
+            case "findExistingIds" -> ((Collection<String>) args[0]).stream()
+                    .filter(documents::containsKey)
+                    .collect(Collectors.toSet());
+            case "findDeletedVersions" -> Map.of();
+            case "markDeleted" -> null;
+            case "findByRootPlanId" -> find(entity -> args[0].equals(entity.getRootPlanId()));
+            case "findByParentId" -> find(entity -> args[0].equals(entity.getParentId()));
+            case "deleteById" -> {
+                documents.remove((String) args[0]);
+                yield null;
+            }
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "InMemoryPlanRepository";
+            default -> throw new UnsupportedOperationException(method.getName());
+        };
+    }
+
+    private Object write(List<PlanEntity> upserts, Collection<String> deleteIds) {
+        for (PlanEntity entity : upserts) documents.put(entity.getId(), copy(entity));
+        deleteIds.forEach(documents::remove);
+        return null;
+    }
+
+    private List<PlanEntity> find(Predicate<PlanEntity> filter) {
+        return documents.values().stream().filter(filter).map(this::copy).toList();
+    }
+
+    private PlanEntity copy(PlanEntity entity) {
+        return PlanEntity.builder()
+                .id(entity.getId())
+                .objectType(entity.getObjectType())
+                .parentId(entity.getParentId())
+                .rootPlanId(entity.getRootPlanId())
+                .etag(entity.getEtag())
+                .version(entity.getVersion())
+                .attributes(new HashMap<>(Objects.requireNonNull(entity.getAttributes())))
+                .build();
+    }
+}
@@ -0,0 +1,205 @@
+package com.healthplan.indexapi.benchmarks;
+
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.healthplan.indexapi.model.PlanEntity;
+import com.healthplan.indexapi.model.PlanQueueMessage;
+import com.healthplan.indexapi.model.PlanSnapshot;
+import com.healthplan.indexapi.service.ElasticsearchIndexService;
+import com.healthplan.indexapi.service.PlanCacheService;
+import com.healthplan.indexapi.service.PlanService;
+import com.healthplan.indexapi.service.QueueService;
+import com.healthplan.indexapi.util.ETagGenerator;
+import com.healthplan.indexapi.util.JsonMerge;
+import com.healthplan.indexapi.util.JsonSchemaValidator;
+import com.healthplan.indexapi.util.PlanDocumentMapper;
+import com.healthplan.indexapi.util.PlanMessageConverter;
+import com.healthplan.indexapi.util.PlanMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU-bound steps of the plan write/read path, for plans with 1 to 500 linked services
+ * Run: java -jar target/benchmarks.jar [regex] (e.g. "PlanBenchmarks.validate")
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanBenchmarks {
+
+    private static final String PLAN_ID = "plan-bench";
+    private static final int MAX_MESSAGE_BYTES = 16 * 1024 * 1024;
+
+    @Param({"1", "10", "100", "500"})
+    public int linkedServices;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonSchemaValidator compiledValidator;
+    private JsonSchemaValidator fullReportValidator;
+    private PlanDocumentMapper documentMapper;
+    private ElasticsearchIndexService indexService;
+    private PlanService planService;
+
+    private ObjectNode plan;
+    private byte[] planJson;
+    private List<PlanEntity> documents;
+    private PlanQueueMessage indexMessage;
+    private int copay;
+
+    private final MessageConverter jsonConverter =
+            new PlanMessageConverter(PlanMessageConverter.Format.JSON, PlanMessageConverter.Compression.NONE, 0, MAX_MESSAGE_BYTES);
+    private final MessageConverter smileLz4Converter =
+            new PlanMessageConverter(PlanMessageConverter.Format.SMILE, PlanMessageConverter.Compression.LZ4, 0, MAX_MESSAGE_BYTES);
+
+    @Setup
+    public void setup() {
+        PlanMetrics metrics = new PlanMetrics(new SimpleMeterRegistry());
+        compiledValidator = new JsonSchemaValidator(false);
+        fullReportValidator = new JsonSchemaValidator(true);
+        documentMapper = new PlanDocumentMapper(objectMapper);
+        indexService = new ElasticsearchIndexService(null, objectMapper, metrics); // only builds documents
+
+        plan = PlanGenerator.plan(objectMapper, PLAN_ID, linkedServices);
+        planJson = plan.toString().getBytes(StandardCharsets.UTF_8);
+        documents = documentMapper.decompose(plan);
+        indexMessage = PlanQueueMessage.index(PLAN_ID, plan.toString(), 1);
+
+        // Real PlanService over in-memory MongoDB, no queue, cache disabled
+        planService = new PlanService(InMemoryPlanRepository.create(), compiledValidator, objectMapper,
+                new NoOpQueueService(metrics), null, // outbox disabled
+                new PlanCacheService(null, new SimpleMeterRegistry(), false, 1, 1, "unused"),
+                metrics, documentMapper);
+        planService.createPlan(plan.deepCopy());
+    }
+
+    // ==============================================================================
+    // Single steps
+    // ==============================================================================
+
+    @Benchmark
+    public JsonNode validateCompiled() {
+        compiledValidator.validate(plan);
+        return plan;
+    }
+
+    @Benchmark
+    public JsonNode validateFullReport() {
+        fullReportValidator.validate(plan);
+        return plan;
+    }
+
+    /**
+     * Keyed merge of a one-copay patch (includes copying the stored tree, which the merge modifies in place)
+     */
+    @Benchmark
+    public JsonNode deepMergeKeyed() {
+        return JsonMerge.deepMerge(plan.deepCopy(), PlanGenerator.copayPatch(objectMapper, PLAN_ID, 0, 99), true);
+    }
+
+    @Benchmark
+    public String etagMd5() {
+        return ETagGenerator.generate(planJson, ETagGenerator.Algorithm.MD5);
+    }
+
+    @Benchmark
+    public String etagXxHash64() {
+        return ETagGenerator.generate(planJson, ETagGenerator.Algorithm.XXHASH64);
+    }
+
+    /**
+     * Serialization to UTF-8 with the ETag computed while writing, as in preparePlan
+     */
+    @Benchmark
+    public ETagGenerator.Hashed serializeAndHash() throws Exception {
+        return ETagGenerator.writeAndHash(objectMapper, plan, ETagGenerator.Algorithm.MD5);
+    }
+
+    @Benchmark
+    public List<PlanEntity> decompose() {
+        return documentMapper.decompose(plan);
+    }
+
+    /**
+     * Tree assembly plus serialization, as in reconstructPlan
+     */
+    @Benchmark
+    public String assemble() throws Exception {
+        return objectMapper.writeValueAsString(documentMapper.assemble(PLAN_ID, documents));
+    }
+
+    @Benchmark
+    public List<BulkOperation> elasticsearchDocuments() {
+        return indexService.buildIndexOperations(PLAN_ID, plan);
+    }
+
+    /**
+     * INDEX message encoded and decoded again, JSON vs Smile + LZ4
+     */
+    @Benchmark
+    public Object queueMessageJson() {
+        return roundTrip(jsonConverter);
+    }
+
+    @Benchmark
+    public Object queueMessageSmileLz4() {
+        return roundTrip(smileLz4Converter);
+    }
+
+    // ==============================================================================
+    // PlanService paths over the in-memory repository
+    // ==============================================================================
+
+    @Benchmark
+    public PlanSnapshot getPlan() {
+        return planService.getPlan(PLAN_ID);
+    }
+
+    /**
+     * Keyed one-copay PATCH: load, merge, validate, diff, write
+     */
+    @Benchmark
+    public PlanSnapshot patchOneCopay() {
+        copay = (copay + 1) % 1000; // a real change on every call
+        return planService.patchPlan(PLAN_ID, null, PlanGenerator.copayPatch(objectMapper, PLAN_ID, 0, copay), true);
+    }
+
+    private Object roundTrip(MessageConverter converter) {
+        Message message = converter.toMessage(indexMessage, new MessageProperties());
+        message.getMessageProperties().setInferredArgumentType(PlanQueueMessage.class);
+        return converter.fromMessage(message);
+    }
+
+    /**
+     * QueueService that publishes nothing
+     */
+    private static final class NoOpQueueService extends QueueService {
+
+        NoOpQueueService(PlanMetrics metrics) {
+            super(null, metrics);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> publish(PlanQueueMessage message) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> publishAll(List<PlanQueueMessage> messages) {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.healthplan.indexapi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Schema-valid plans of any size, shaped like the README sample plan
+ */
+final class PlanGenerator {
+
+    private static final String ORG = "example.com";
+
+    private PlanGenerator() {
+    }
+
+    static ObjectNode plan(ObjectMapper objectMapper, String planId, int linkedServices) {
+        ObjectNode plan = objectMapper.createObjectNode();
+        plan.set("planCostShares", costShares(objectMapper, planId + "-costshare", 2000, 23));
+
+        ArrayNode services = plan.putArray("linkedPlanServices");
+        for (int i = 0; i < linkedServices; i++) {
+            services.add(linkedPlanService(objectMapper, planId, i, i % 50));
+        }
+
+        plan.put("_org", ORG);
+        plan.put("objectId", planId);
+        plan.put("objectType", "plan");
+        plan.put("planType", "inNetwork");
+        plan.put("creationDate", "2025-12-06");
+        return plan;
+    }
+
+    /**
+     * Keyed PATCH body changing the copay of one linked service
+     */
+    static ObjectNode copayPatch(ObjectMapper objectMapper, String planId, int serviceIndex, int copay) {
+        ObjectNode patch = objectMapper.createObjectNode();
+        ObjectNode service = patch.putArray("linkedPlanServices").addObject();
+        service.put("objectId", planId + "-planservice-" + serviceIndex);
+        ObjectNode costShares = service.putObject("planserviceCostShares");
+        costShares.put("objectId", planId + "-pscostshare-" + serviceIndex);
+        costShares.put("copay", copay);
+        return patch;
+    }
+
+    private static ObjectNode linkedPlanService(ObjectMapper objectMapper, String planId, int index, int copay) {
+        ObjectNode service = objectMapper.createObjectNode();
+
+        ObjectNode linkedService = service.putObject("linkedService");
+        linkedService.put("_org", ORG);
+        linkedService.put("objectId", planId + "-service-" + index);
+        linkedService.put("objectType", "service");
+        linkedService.put("name", "Service " + index);
+
+        service.set("planserviceCostShares", costShares(objectMapper, planId + "-pscostshare-" + index, 10, copay));
+        service.put("_org", ORG);
+        service.put("objectId", planId + "-planservice-" + index);
+        service.put("objectType", "planservice");
+        return service;
+    }
+
+    private static ObjectNode costShares(ObjectMapper objectMapper, String objectId, int deductible, int copay) {
+        ObjectNode costShares = objectMapper.createObjectNode();
+        costShares.put("deductible", deductible);
+        costShares.put("_org", ORG);
+        costShares.put("copay", copay);
+        costShares.put("objectId", objectId);
+        costShares.put("objectType", "membercostshare");
+        return costShares;
+    }
+}
@@ -3,80 +3,140 @@ package com.healthplan.indexapi.config;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.elasticsearch._types.mapping.*;
 import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
+import co.elastic.clients.elasticsearch.indices.TranslogDurability;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
  * Elasticsearch Index Initializer
  *
  * Automatically creates Parent-Child Mapping on application startup
+ * "plans" is an alias of a versioned index (plans_v1, plans_v2, ...), so PlanReindexService can
+ * build a new index and switch the alias to it. Indexes created before that stay a concrete "plans"
+ * index until the first reindex replaces them (the old index is kept as plans_v0).
  */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class ElasticsearchInitializer {
 
+    public static final String INDEX_ALIAS = "plans";
+    public static final String INDEX_PREFIX = "plans_v";
+
     private final ElasticsearchClient elasticsearchClient;
-    private static final String INDEX_NAME = "plans";
+
+    @Value("${plan.index.shards}")
+    private int shards;
+
+    @Value("${plan.index.replicas}")
+    private String replicas;
+
+    @Value("${plan.index.refresh-interval}")
+    private String refreshInterval;
 
     @PostConstruct
     public void initializeIndex() {
         try {
-            // Check if index already exists
+            // Check if index (or alias) already exists
             boolean exists = elasticsearchClient.indices()
-                    .exists(ExistsRequest.of(e -> e.index(INDEX_NAME)))
+                    .exists(ExistsRequest.of(e -> e.index(INDEX_ALIAS)))
                     .value();
 
             if (exists) {
-                log.info("Elasticsearch index '{}' already exists, skipping creation", INDEX_NAME);
+                log.info("Elasticsearch index '{}' already exists, skipping creation", INDEX_ALIAS);
                 return;
             }
 
             // Create Parent-Child Mapping
-            log.info("Creating Elasticsearch index '{}' with Parent-Child mapping...", INDEX_NAME);
-
-            elasticsearchClient.indices().create(CreateIndexRequest.of(c -> c
-                    .index(INDEX_NAME)
-                    .mappings(m -> m
-                            .properties("objectId", Property.of(p -> p.keyword(k -> k)))
-                            .properties("objectType", Property.of(p -> p.keyword(k -> k)))
-                            .properties("_org", Property.of(p -> p.keyword(k -> k)))
-                            .properties("planType", Property.of(p -> p.keyword(k -> k)))
-                            .properties("creationDate", Property.of(p -> p.keyword(k -> k)))
-                            .properties("deductible", Property.of(p -> p.integer(i -> i)))
-                            .properties("copay", Property.of(p -> p.integer(i -> i)))
-                            .properties("linkedService", Property.of(p -> p
-                                    .object(o -> o
-                                            .properties("objectId", Property.of(sp -> sp.keyword(k -> k)))
-                                            .properties("name", Property.of(sp -> sp.text(t -> t)))
-                                    )
-                            ))
-                            .properties("planserviceCostShares", Property.of(p -> p
-                                    .object(o -> o
-                                            .properties("deductible", Property.of(sp -> sp.integer(i -> i)))
-                                            .properties("copay", Property.of(sp -> sp.integer(i -> i)))
-                                    )
-                            ))
-                            .properties("plan_join", Property.of(p -> p
-                                    .join(j -> j
-                                            .relations(Map.of(
-                                                    "plan", java.util.List.of("planCostShares", "linkedPlanService")
-                                            ))
-                                    )
-                            ))
-                    )
-            ));
-
-            log.info("Successfully created Elasticsearch index '{}' with Parent-Child mapping", INDEX_NAME);
+            String indexName = INDEX_PREFIX + 1;
+            log.info("Creating Elasticsearch index '{}' with Parent-Child mapping...", indexName);
+            createIndex(indexName, false);
+            elasticsearchClient.indices().putAlias(a -> a.index(indexName).name(INDEX_ALIAS));
+
+            log.info("Successfully created Elasticsearch index '{}' with Parent-Child mapping, alias '{}'",
+                    indexName, INDEX_ALIAS);
 
         } catch (Exception e) {
             log.error("Failed to initialize Elasticsearch index: {}", e.getMessage(), e);
             // Don't throw, let application continue
         }
     }
+
+    /**
+     * Create a plan index with the Parent-Child mapping and the configured shards
+     * bulkLoad: no replicas, no refresh and async translog until the load is done (see PlanReindexService)
+     */
+    public void createIndex(String indexName, boolean bulkLoad) throws IOException {
+        elasticsearchClient.indices().create(CreateIndexRequest.of(c -> c
+                .index(indexName)
+                .mappings(planMapping())
+                .settings(st -> {
+                    st.numberOfShards(String.valueOf(shards));
+                    if (bulkLoad) {
+                        return st
+                                .numberOfReplicas("0")
+                                .refreshInterval(t -> t.time("-1"))
+                                .translog(tl -> tl.durability(TranslogDurability.Async));
+                    }
+                    return st
+                            .numberOfReplicas(replicas)
+                            .refreshInterval(t -> t.time(refreshInterval));
+                })
+        ));
+    }
+
+    /**
+     * Put the configured replicas, refresh interval and a durable translog back on an index (or the alias)
+     * after a bulk load
+     */
+    public void restoreSettings(String index) throws IOException {
+        elasticsearchClient.indices().putSettings(p -> p
+                .index(index)
+                .settings(st -> st
+                        .numberOfReplicas(replicas)
+                        .refreshInterval(t -> t.time(refreshInterval))
+                        .translog(tl -> tl.durability(TranslogDurability.Request))));
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    private TypeMapping planMapping() {
+        return TypeMapping.of(m -> m
+                .properties("objectId", Property.of(p -> p.keyword(k -> k)))
+                .properties("objectType", Property.of(p -> p.keyword(k -> k)))
+                .properties("_org", Property.of(p -> p.keyword(k -> k)))
+                .properties("planType", Property.of(p -> p.keyword(k -> k)))
+                .properties("creationDate", Property.of(p -> p.keyword(k -> k)))
+                .properties("deductible", Property.of(p -> p.integer(i -> i)))
+                .properties("copay", Property.of(p -> p.integer(i -> i)))
+                .properties("linkedService", Property.of(p -> p
+                        .object(o -> o
+                                .properties("objectId", Property.of(sp -> sp.keyword(k -> k)))
+                                .properties("name", Property.of(sp -> sp.text(t -> t)))
+                        )
+                ))
+                .properties("planserviceCostShares", Property.of(p -> p
+                        .object(o -> o
+                                .properties("deductible", Property.of(sp -> sp.integer(i -> i)))
+                                .properties("copay", Property.of(sp -> sp.integer(i -> i)))
+                        )
+                ))
+                .properties("plan_join", Property.of(p -> p
+                        .join(j -> j
+                                .relations(Map.of(
+                                        "plan", java.util.List.of("planCostShares", "linkedPlanService")
+                                ))
+                        )
+                ))
+        );
+    }
 }
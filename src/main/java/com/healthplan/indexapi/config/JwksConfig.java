@@ -0,0 +1,23 @@
+package com.healthplan.indexapi.config;
+
+import com.healthplan.indexapi.security.JwkSetSource;
+import com.healthplan.indexapi.security.RemoteJwkSetSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * JWKS source used by JwksKeyStore
+ * security.jwks.uri accepts https:// or file: URLs; tests can replace the bean with a @Primary stub
+ */
+@Configuration
+public class JwksConfig {
+
+    @Value("${security.jwks.uri}")
+    private String jwksUri;
+
+    @Bean
+    public JwkSetSource jwkSetSource() {
+        return new RemoteJwkSetSource(jwksUri);
+    }
+}
@@ -0,0 +1,123 @@
+package com.healthplan.indexapi.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.healthplan.indexapi.repository.OutboxRepository;
+import com.healthplan.indexapi.security.VerifiedTokenCache;
+import com.healthplan.indexapi.service.QueueService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Gauges read on every Prometheus scrape: queue depth of the three plan queues, unconfirmed publishes,
+ * pending outbox records and token cache statistics
+ * Queue information costs a broker round trip per queue, so it is cached for QUEUE_INFO_TTL
+ * (depth and consumer count of a queue share one lookup); the outbox count is a MongoDB query,
+ * cached for OUTBOX_COUNT_TTL
+ */
+@Slf4j
+@Configuration
+public class MetricsConfig {
+
+    private static final Duration QUEUE_INFO_TTL = Duration.ofSeconds(5);
+    private static final Duration OUTBOX_COUNT_TTL = Duration.ofSeconds(5);
+
+    @Value("${queue.plan.index}")
+    private String indexQueueName;
+
+    @Value("${queue.plan.update}")
+    private String updateQueueName;
+
+    @Value("${queue.plan.delete}")
+    private String deleteQueueName;
+
+    @Bean
+    public MeterBinder queueDepthMetrics(AmqpAdmin amqpAdmin) {
+        LoadingCache<String, Optional<QueueInformation>> queueInfo = Caffeine.newBuilder()
+                .expireAfterWrite(QUEUE_INFO_TTL)
+                .build(queue -> Optional.ofNullable(queueInfo(amqpAdmin, queue)));
+
+        return registry -> {
+            for (String queue : List.of(indexQueueName, updateQueueName, deleteQueueName)) {
+                Gauge.builder("plan.queue.depth", queueInfo, cache -> messageCount(cache.get(queue)))
+                        .description("Messages ready in the queue")
+                        .tag("queue", queue)
+                        .register(registry);
+                Gauge.builder("plan.queue.consumers", queueInfo, cache -> consumerCount(cache.get(queue)))
+                        .tag("queue", queue)
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder publisherMetrics(QueueService queueService) {
+        return registry -> Gauge.builder("plan.queue.in-flight", queueService, QueueService::getInFlight)
+                .description("Messages sent but not yet confirmed by the broker")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder outboxMetrics(OutboxRepository outboxRepository) {
+        LoadingCache<String, Double> pendingCount = Caffeine.newBuilder()
+                .expireAfterWrite(OUTBOX_COUNT_TTL)
+                .build(key -> pendingCount(outboxRepository));
+
+        return registry -> Gauge.builder("plan.outbox.pending", pendingCount, cache -> cache.get("pending"))
+                .description("Outbox records not yet confirmed by the broker")
+                .register(registry);
+    }
+
+    @Bean
+    public MeterBinder tokenCacheMetrics(VerifiedTokenCache tokenCache) {
+        return registry -> {
+            FunctionCounter.builder("security.token.cache.hits", tokenCache, VerifiedTokenCache::getHitCount)
+                    .register(registry);
+            FunctionCounter.builder("security.token.cache.misses", tokenCache, VerifiedTokenCache::getMissCount)
+                    .register(registry);
+            Gauge.builder("security.token.cache.size", tokenCache, VerifiedTokenCache::size)
+                    .register(registry);
+        };
+    }
+
+    // ==============================================================================
+    // Helper methods for the public methods
+    // ==============================================================================
+
+    private double messageCount(Optional<QueueInformation> info) {
+        return info.map(i -> (double) i.getMessageCount()).orElse(Double.NaN);
+    }
+
+    private double consumerCount(Optional<QueueInformation> info) {
+        return info.map(i -> (double) i.getConsumerCount()).orElse(Double.NaN);
+    }
+
+    private double pendingCount(OutboxRepository outboxRepository) {
+        try {
+            return outboxRepository.countBySentAtIsNull();
+        } catch (Exception e) {
+            log.debug("Failed to count outbox records: {}", e.getMessage());
+            return Double.NaN; // MongoDB unreachable: don't fail the scrape
+        }
+    }
+
+    private QueueInformation queueInfo(AmqpAdmin admin, String queue) {
+        try {
+            return admin.getQueueInfo(queue);
+        } catch (Exception e) {
+            log.debug("Failed to read queue info: queue={}, error={}", queue, e.getMessage());
+            return null; // Broker unreachable: report NaN, don't fail the scrape
+        }
+    }
+}
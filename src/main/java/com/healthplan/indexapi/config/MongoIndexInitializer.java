@@ -0,0 +1,46 @@
+package com.healthplan.indexapi.config;
+
+import com.healthplan.indexapi.model.DeletedPlanVersion;
+import com.healthplan.indexapi.model.OutboxRecord;
+import com.healthplan.indexapi.model.PlanEntity;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * MongoDB Index Initializer
+ *
+ * Creates the indexes declared on PlanEntity (e.g. rootPlanId), OutboxRecord and DeletedPlanVersion on application startup
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MongoIndexInitializer {
+
+    private final MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void initializeIndexes() {
+        try {
+            ensureIndexes(PlanEntity.class);
+            ensureIndexes(OutboxRecord.class);
+            ensureIndexes(DeletedPlanVersion.class);
+        } catch (Exception e) {
+            log.error("Failed to initialize MongoDB indexes: {}", e.getMessage(), e);
+            // Don't throw, let application continue
+        }
+    }
+
+    private void ensureIndexes(Class<?> entityClass) {
+        IndexOperations indexOps = mongoTemplate.indexOps(entityClass);
+        new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext())
+                .resolveIndexFor(entityClass)
+                .forEach(indexOps::createIndex);
+
+        log.info("Ensured MongoDB indexes for collection '{}'", mongoTemplate.getCollectionName(entityClass));
+    }
+}
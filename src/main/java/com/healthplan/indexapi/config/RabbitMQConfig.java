@@ -1,14 +1,24 @@
 package com.healthplan.indexapi.config;
 
+import com.healthplan.indexapi.util.PlanMessageConverter;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Date;
+
 @Configuration
 public class RabbitMQConfig {
 
@@ -21,6 +31,27 @@ public class RabbitMQConfig {
     @Value("${queue.plan.delete}")
     private String deleteQueueName;
 
+    @Value("${plan.cache.invalidation-exchange}")
+    private String cacheInvalidationExchangeName;
+
+    @Value("${queue.plan.batch.size}")
+    private int batchSize;
+
+    @Value("${queue.plan.batch.linger-ms}")
+    private long batchLingerMs;
+
+    @Value("${queue.message.format}")
+    private PlanMessageConverter.Format messageFormat;
+
+    @Value("${queue.message.compression}")
+    private PlanMessageConverter.Compression messageCompression;
+
+    @Value("${queue.message.compression-threshold-bytes}")
+    private int compressionThresholdBytes;
+
+    @Value("${queue.message.max-bytes}")
+    private int maxMessageBytes;
+
     /**
      * Create Queues on RabbitMQ Server
      */
@@ -39,10 +70,36 @@ public class RabbitMQConfig {
         return new Queue(deleteQueueName, true);
     }
 
-    // Convert Java object to JSON object
+    /**
+     * Plan cache invalidation: every node binds its own exclusive, auto-delete queue
+     * to the fanout exchange, so one published objectId reaches all nodes
+     * Declared only when the plan cache is enabled
+     */
+    @Bean
+    @ConditionalOnProperty(name = "plan.cache.enabled", havingValue = "true")
+    public FanoutExchange planCacheInvalidationExchange() {
+        return new FanoutExchange(cacheInvalidationExchangeName, true, false);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "plan.cache.enabled", havingValue = "true")
+    public Queue planCacheInvalidationQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "plan.cache.enabled", havingValue = "true")
+    public Binding planCacheInvalidationBinding() {
+        return BindingBuilder.bind(planCacheInvalidationQueue()).to(planCacheInvalidationExchange());
+    }
+
+    /**
+     * Convert Java object to JSON (or Smile / CBOR) message, used for sending and by every listener
+     * Incoming messages are decoded by their content-type, whatever format this node publishes
+     */
     @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        return new PlanMessageConverter(messageFormat, messageCompression, compressionThresholdBytes, maxMessageBytes);
     }
 
     /**
@@ -52,7 +109,31 @@ public class RabbitMQConfig {
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter()); // use Jackson2JsonMessageConverter
+        template.setMessageConverter(messageConverter()); // use PlanMessageConverter
+        template.setMandatory(true); // unroutable messages are returned instead of acked and dropped
+        template.setBeforePublishPostProcessors(message -> {
+            message.getMessageProperties().setTimestamp(new Date()); // consumers measure queue lag from it
+            return message;
+        });
         return template;
     }
+
+    /**
+     * Listener container factory for PlanIndexWorker batch mode
+     * Delivers up to batchSize messages at once; a partial batch is delivered
+     * once no new message arrives within batchLingerMs. Acks are sent manually per message.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory); // Spring Boot defaults (message converter, etc.)
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchLingerMs);
+        factory.setPrefetchCount(batchSize);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
 }
@@ -28,8 +28,11 @@ public class SecurityConfig {
             .sessionManagement(session ->
                     session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
 
-            // Define authorization rules, requiring authentication for all incoming requests.
+            // Define authorization rules, requiring authentication for all incoming requests
+            // and an administrator (security.admin.emails) for the admin endpoints.
             .authorizeHttpRequests(auth -> auth
+                    .requestMatchers(JwtAuthenticationFilter.PUBLIC_PATHS).permitAll() // health checks
+                    .requestMatchers(JwtAuthenticationFilter.ADMIN_PATHS).hasRole("ADMIN") // 403 for other users
                     .anyRequest().authenticated())
 
             // Insert the custom JWT filter BEFORE the traditional form login filter to handle token authentication first.
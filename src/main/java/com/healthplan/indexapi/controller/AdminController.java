@@ -0,0 +1,85 @@
+package com.healthplan.indexapi.controller;
+
+import com.healthplan.indexapi.model.LoadModeStatus;
+import com.healthplan.indexapi.model.ReindexProgress;
+import com.healthplan.indexapi.service.IndexLoadModeService;
+import com.healthplan.indexapi.service.PlanReindexService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/v1/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private final PlanReindexService reindexService;
+    private final IndexLoadModeService loadModeService;
+
+    // Rebuild the index from MongoDB into plans_vN, then move the "plans" alias; runs in the background
+    @PostMapping(
+            value = "/reindex",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<ReindexProgress> startReindex() throws IOException {
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .body(reindexService.startReindex());
+    }
+
+
+    @GetMapping(
+            value = "/reindex",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<ReindexProgress> getReindexProgress() {
+        ReindexProgress progress = reindexService.getProgress();
+        if (progress == null) return ResponseEntity.notFound().build(); // no reindex since this node started
+        return ResponseEntity.ok(progress);
+    }
+
+
+    // Move the "plans" alias back to a kept index (e.g. plans_v1) and replay the changes since from the outbox
+    @PostMapping(
+            value = "/reindex/rollback",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<ReindexProgress> rollbackReindex(@RequestParam String index) throws IOException {
+        return ResponseEntity
+                .status(HttpStatus.ACCEPTED)
+                .body(reindexService.startRollback(index));
+    }
+
+
+    // Bulk-load mode: no refresh, no replicas, larger worker batches
+    @PostMapping(
+            value = "/load-mode",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<LoadModeStatus> enterLoadMode() throws IOException {
+        return ResponseEntity.ok(loadModeService.enterLoadMode());
+    }
+
+
+    // Restores the settings, refreshes and waits for green (yellow if there are too few data nodes for the replicas)
+    @DeleteMapping(
+            value = "/load-mode",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<LoadModeStatus> leaveLoadMode() throws IOException {
+        return ResponseEntity.ok(loadModeService.leaveLoadMode());
+    }
+
+
+    @GetMapping(
+            value = "/load-mode",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<LoadModeStatus> getLoadMode() throws IOException {
+        return ResponseEntity.ok(loadModeService.getStatus());
+    }
+}
@@ -1,6 +1,10 @@
 package com.healthplan.indexapi.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.healthplan.indexapi.model.PlanSnapshot;
+import com.healthplan.indexapi.service.PlanImportService;
 import com.healthplan.indexapi.service.PlanService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -8,28 +12,59 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 @RestController
 @RequestMapping("/api/v1/plan")
 @RequiredArgsConstructor
 public class PlanController {
 
     private final PlanService planService;
+    private final PlanImportService planImportService;
+
+    private static final String NDJSON = "application/x-ndjson";
 
     @PostMapping(
             consumes = MediaType.APPLICATION_JSON_VALUE, // 415 if not JSON payload
             produces = MediaType.APPLICATION_JSON_VALUE // 406 if no Accept header: application/json
     )
-    public ResponseEntity<String> createPlan(@RequestBody String requestBody) {
+    public ResponseEntity<byte[]> createPlan(@RequestBody JsonNode requestBody) { // parsed once, reused downstream
 
-        String objectId = planService.createPlan(requestBody);
-        String savedPlan = planService.getPlan(objectId);
-        String etag = planService.generateETag(savedPlan);
+        PlanSnapshot savedPlan = planService.createPlan(requestBody);
 
         return ResponseEntity
                 .status(HttpStatus.CREATED)
-                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.ETAG, savedPlan.getEtag())
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(savedPlan);
+                .body(savedPlan.getJson());
+    }
+
+
+    @PostMapping(
+            value = "/_bulk",
+            consumes = NDJSON, // one plan per line
+            produces = NDJSON // one result per line, in input order
+    )
+    public void bulkCreatePlans(InputStream requestBody, HttpServletResponse response) throws IOException {
+        // 200 as soon as the stream starts, each line carries its own status
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(NDJSON);
+        planImportService.importPlans(requestBody, response.getOutputStream());
+    }
+
+
+    @GetMapping(
+            value = "/_export",
+            produces = NDJSON // one plan per line
+    )
+    public void exportPlans(
+            @RequestParam(required = false) String org,
+            @RequestParam(required = false) String planType,
+            HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(NDJSON);
+        planService.exportPlans(org, planType, response.getOutputStream());
     }
 
 
@@ -37,25 +72,27 @@ public class PlanController {
             value = "/{objectId}",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<String> getPlan(
+    public ResponseEntity<byte[]> getPlan(
             @PathVariable String objectId,
             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
-        String plan = planService.getPlan(objectId);
-        String currentETag = planService.generateETag(plan);
-
-        if (ifNoneMatch != null && ifNoneMatch.equals(currentETag)) { // if match 304 Not Modified
-            return ResponseEntity
-                    .status(HttpStatus.NOT_MODIFIED)
-                    .header(HttpHeaders.ETAG, currentETag)
-                    .build();
+        if (ifNoneMatch != null) {
+            String currentETag = planService.getETag(objectId); // stored ETag, no reconstruction
+            if (ifNoneMatch.equals(currentETag)) { // if match 304 Not Modified
+                return ResponseEntity
+                        .status(HttpStatus.NOT_MODIFIED)
+                        .header(HttpHeaders.ETAG, currentETag)
+                        .build();
+            }
         }
 
+        PlanSnapshot plan = planService.getPlan(objectId);
+
         return ResponseEntity // if not match 200 OK
                 .ok()
-                .header(HttpHeaders.ETAG, currentETag)
+                .header(HttpHeaders.ETAG, plan.getEtag())
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(plan);
+                .body(plan.getJson());
     }
 
 
@@ -70,35 +107,26 @@ public class PlanController {
             consumes = MediaType.APPLICATION_JSON_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<String> patchPlan(
+    public ResponseEntity<byte[]> patchPlan(
             @PathVariable String objectId,
             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
-            @RequestBody String patchBody) {
-
-        // 1. Get existing plan (會自動拋出 ResourceNotFoundException 如果不存在)
-        String existingPlan = planService.getPlan(objectId);
-
-        // 2. Conditional PATCH: Check If-Match header
-        if (ifMatch != null) {
-            String currentETag = planService.generateETag(existingPlan);
-            if (!ifMatch.equals(currentETag)) {
-                // ETag 不匹配 → 412 Precondition Failed
-                return ResponseEntity
-                        .status(HttpStatus.PRECONDITION_FAILED)
-                        .build();
-            }
-        }
+            @RequestParam(defaultValue = "replace") String arrayMerge, // replace | keyed (match elements by objectId)
+            @RequestBody JsonNode patchBody) {
 
-        // 3. Apply patch
-        String patchedPlan = planService.patchPlan(objectId, patchBody);
+        boolean keyedArrayMerge = switch (arrayMerge) {
+            case "replace" -> false;
+            case "keyed" -> true;
+            default -> throw new IllegalArgumentException("arrayMerge must be 'replace' or 'keyed'");
+        };
 
-        // 4. Generate new ETag
-        String newETag = planService.generateETag(patchedPlan);
+        // Apply patch; If-Match is checked against the documents the patch is applied to,
+        // and the write fails with 412 if the plan changed in between (new ETag is computed and stored by the service)
+        PlanSnapshot patchedPlan = planService.patchPlan(objectId, ifMatch, patchBody, keyedArrayMerge);
 
         return ResponseEntity
                 .ok()
-                .header(HttpHeaders.ETAG, newETag)
+                .header(HttpHeaders.ETAG, patchedPlan.getEtag())
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(patchedPlan);
+                .body(patchedPlan.getJson());
     }
 }
@@ -0,0 +1,37 @@
+package com.healthplan.indexapi.controller;
+
+import com.healthplan.indexapi.model.PlanSearchRequest;
+import com.healthplan.indexapi.model.SearchPage;
+import com.healthplan.indexapi.service.PlanSearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/v1/search")
+@RequiredArgsConstructor
+public class SearchController {
+
+    private final PlanSearchService searchService;
+
+    // e.g. /plans?serviceName=physical&maxCopay=50&org=example.com&fields=objectId,planType&size=20
+    @GetMapping(
+            value = "/plans",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<SearchPage> searchPlans(@ModelAttribute PlanSearchRequest request) {
+        return ResponseEntity.ok(searchService.searchPlans(request));
+    }
+
+    // e.g. /plans/plan-001/children?type=linkedPlanService
+    @GetMapping(
+            value = "/plans/{objectId}/children",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<SearchPage> searchChildren(
+            @PathVariable String objectId,
+            @ModelAttribute PlanSearchRequest request) {
+        return ResponseEntity.ok(searchService.searchChildren(objectId, request));
+    }
+}
@@ -0,0 +1,12 @@
+package com.healthplan.indexapi.exception;
+
+/**
+ * If-Match does not match the current ETag of the plan
+ * HTTP 412 Precondition Failed
+ */
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String objectId) {
+        super("ETag does not match the current version of objectId: " + objectId);
+    }
+}
@@ -0,0 +1,12 @@
+package com.healthplan.indexapi.exception;
+
+/**
+ * Plan changed by another request between read and write, the request can be retried
+ * HTTP 409 Conflict
+ */
+public class ResourceModifiedException extends RuntimeException {
+
+    public ResourceModifiedException(String objectId) {
+        super("Resource was modified concurrently, retry the request; objectId: " + objectId);
+    }
+}
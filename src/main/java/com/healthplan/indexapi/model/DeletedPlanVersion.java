@@ -0,0 +1,34 @@
+package com.healthplan.indexapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Highest version a deleted plan was written with (high-water mark per objectId)
+ * A plan created again with the same objectId starts above it, so Elasticsearch never rejects its INDEX
+ * as older than the DELETE, whatever the clocks of the nodes that wrote them
+ */
+@Document(collection = "plan_deleted_versions")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeletedPlanVersion {
+
+    // objectId of the deleted plan
+    @Id
+    private String id;
+
+    private Long version;
+
+    // Marks expire after 7 days, far longer than a DELETE waits in the queue
+    @Indexed(name = "deleted_ttl", expireAfter = "7d")
+    private Instant deletedAt;
+}
@@ -0,0 +1,29 @@
+package com.healthplan.indexapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Bulk-load mode of the plans index
+ * Returned by /api/v1/admin/load-mode
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoadModeStatus {
+
+    // Refresh disabled on the index, i.e. load mode entered through any node
+    private final boolean active;
+
+    // Current settings of the index behind the "plans" alias
+    private final String refreshInterval;
+    private final String replicas;
+
+    // Messages per batch of this node's batch listener (null if batch mode is disabled, then load mode
+    // only changes the index settings); other nodes follow load mode within the check interval
+    private final Integer batchSize;
+
+    // Cluster health of the index after leaving load mode (yellow when there are too few data nodes for the replicas)
+    private final String health;
+}
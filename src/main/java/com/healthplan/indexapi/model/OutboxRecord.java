@@ -0,0 +1,49 @@
+package com.healthplan.indexapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Queue message waiting to be published (transactional outbox)
+ * Written in the same MongoDB transaction as the plan documents, published by OutboxRelay
+ */
+@Document(collection = "plan_outbox")
+@CompoundIndex(name = "pending", def = "{'sentAt': 1, '_id': 1}")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxRecord {
+
+    // ObjectId, generated on insert: pending records are published in _id order
+    @Id
+    private String id;
+
+    private PlanQueueMessage message;
+
+    private Instant createdAt;
+
+    // Set once the broker confirmed the message; sent records expire after a day
+    @Indexed(name = "sent_ttl", expireAfter = "1d")
+    private Instant sentAt;
+
+    // Relay batch that currently owns the record, until leaseUntil (another node takes over after it)
+    private String leaseOwner;
+
+    private Instant leaseUntil;
+
+    // Publish attempts that were not confirmed
+    private int attempts;
+
+    public static OutboxRecord of(PlanQueueMessage message) {
+        return OutboxRecord.builder().message(message).createdAt(Instant.now()).build();
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Map;
@@ -30,6 +31,18 @@ public class PlanEntity {
     // Parent document ID (if this is a child document)
     private String parentId;
 
+    // Root Plan ID shared by every document of the same plan (whole tree loads in one query)
+    @Indexed
+    private String rootPlanId;
+
+    // ETag of the whole plan, computed at write time (Plan document only)
+    private String etag;
+
+    // Version of the plan, increased on every write (Plan document only); Elasticsearch external version
+    // Sparse index: finds the plans written since a point in time (reindex catch-up)
+    @Indexed(sparse = true)
+    private Long version;
+
     // All other properties stored as Map
     private Map<String, Object> attributes;
 }
@@ -0,0 +1,38 @@
+package com.healthplan.indexapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of one plan in a bulk import, written back as one NDJSON line
+ * status uses the same codes as the single-plan API (201, 400, 409)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PlanImportResult {
+
+    // 1-based line of the request stream the plan starts on
+    private int line;
+
+    private String objectId;
+
+    private int status;
+
+    private String etag;
+
+    private String error;
+
+    public static PlanImportResult created(int line, String objectId, String etag) {
+        return PlanImportResult.builder().line(line).objectId(objectId).status(201).etag(etag).build();
+    }
+
+    public static PlanImportResult failed(int line, String objectId, int status, String error) {
+        return PlanImportResult.builder().line(line).objectId(objectId).status(status).error(error).build();
+    }
+}
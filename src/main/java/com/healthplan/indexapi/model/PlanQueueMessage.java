@@ -1,15 +1,18 @@
 package com.healthplan.indexapi.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.healthplan.indexapi.util.RawJsonDeserializer;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Plan Queue Message model for RabbitMQ
- * Used by QueueService
+ * Built by PlanService, stored in the outbox and published by QueueService
  */
 @Data
 @Builder
@@ -23,5 +26,53 @@ public class PlanQueueMessage implements Serializable {
     private String objectId;
 
     // Plan JSON Object -> String. Only INDEX and UPDATE need it
+    // Written as a string in JSON messages; also read when embedded as an object (binary formats)
+    @JsonDeserialize(using = RawJsonDeserializer.class)
     private String jsonData;
+
+    // Plan version of this write: Elasticsearch rejects writes older than the indexed version
+    private Long version;
+
+    // UPDATE: ids of child documents removed by the patch (jsonData then holds only the changed children)
+    // DELETE: ids of all child documents of the plan (null in DELETE messages written before they were included)
+    private List<String> removedObjectIds;
+
+    /**
+     * INDEX message (for POST operations and bulk import)
+     */
+    public static PlanQueueMessage index(String objectId, String jsonData, long version) {
+        return PlanQueueMessage.builder()
+                .operation("INDEX")
+                .objectId(objectId)
+                .jsonData(jsonData)
+                .version(version)
+                .build();
+    }
+
+    /**
+     * UPDATE message (for PATCH operations)
+     */
+    public static PlanQueueMessage update(String objectId, String jsonData, List<String> removedObjectIds, long version) {
+        return PlanQueueMessage.builder()
+                .operation("UPDATE")
+                .objectId(objectId)
+                .jsonData(jsonData)
+                .removedObjectIds(removedObjectIds)
+                .version(version)
+                .build();
+    }
+
+    /**
+     * DELETE message (for DELETE operations)
+     * childIds: the plan's child documents, deleted by id with the same version as the plan
+     */
+    public static PlanQueueMessage delete(String objectId, List<String> childIds, long version) {
+        return PlanQueueMessage.builder()
+                .operation("DELETE")
+                .objectId(objectId)
+                .jsonData(null)  // No JSON data needed for DELETE
+                .removedObjectIds(childIds)
+                .version(version)
+                .build();
+    }
 }
@@ -0,0 +1,36 @@
+package com.healthplan.indexapi.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Query parameters of GET /api/v1/search/plans (bound by SearchController)
+ * All filters are optional and combined with AND
+ */
+@Data
+public class PlanSearchRequest {
+
+    // Plan (parent) fields
+    private String org;
+    private String planType;
+
+    // has_child linkedPlanService: match on linkedService.name
+    private String serviceName;
+
+    // has_child planCostShares: inclusive ranges
+    private Integer minCopay;
+    private Integer maxCopay;
+    private Integer minDeductible;
+    private Integer maxDeductible;
+
+    // Child type for /plans/{objectId}/children (planCostShares or linkedPlanService)
+    private String type;
+
+    // Page size and _source fields to return (all fields if empty)
+    private Integer size;
+    private List<String> fields;
+
+    // Opaque cursor from the previous page
+    private String cursor;
+}
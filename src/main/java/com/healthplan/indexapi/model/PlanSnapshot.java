@@ -0,0 +1,35 @@
+package com.healthplan.indexapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Complete Plan JSON together with its ETag
+ * Returned by PlanService so callers never re-hash the JSON
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlanSnapshot {
+
+    private String objectId;
+
+    // Reconstructed Plan JSON, UTF-8 (written to the response as is)
+    private byte[] json;
+
+    // ETag computed when the plan was written
+    private String etag;
+
+    // Plan version stored with it
+    private Long version;
+
+    // JSON as text, for queue messages
+    public String jsonText() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,52 @@
+package com.healthplan.indexapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a reindex into a new versioned index, updated by the reindex workers
+ * Returned by GET /api/v1/admin/reindex
+ */
+@Getter
+@RequiredArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReindexProgress {
+
+    public enum State { LOADING, SWITCHING, CATCHING_UP, DONE, FAILED }
+
+    // New index, and the index (or indices) the alias pointed to before
+    private final String targetIndex;
+    private final String previousIndex;
+
+    private final Instant startedAt = Instant.now();
+
+    @Setter
+    private volatile State state = State.LOADING;
+
+    @Setter
+    private volatile Instant finishedAt;
+
+    @Setter
+    private volatile String error;
+
+    private final AtomicLong plansIndexed = new AtomicLong();
+    private final AtomicLong documentsIndexed = new AtomicLong();
+    private final AtomicLong documentsFailed = new AtomicLong();
+
+    // Catch-up: documents of children removed and plans deleted while loading
+    private final AtomicLong documentsDeleted = new AtomicLong();
+    private final AtomicLong deletesFailed = new AtomicLong();
+
+    // Plans per second since the start (until finished)
+    public long getPlansPerSecond() {
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long millis = Math.max(Duration.between(startedAt, end).toMillis(), 1);
+        return plansIndexed.get() * 1000 / millis;
+    }
+}
@@ -0,0 +1,27 @@
+package com.healthplan.indexapi.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of search results
+ * cursor is null on the last page; otherwise pass it back to fetch the next page
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchPage {
+
+    private List<Map<String, Object>> hits;
+
+    // Total matching documents (first page only)
+    private Long total;
+
+    private String cursor;
+}
@@ -0,0 +1,10 @@
+package com.healthplan.indexapi.repository;
+
+import com.healthplan.indexapi.model.OutboxRecord;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface OutboxRepository extends MongoRepository<OutboxRecord, String>, OutboxRepositoryCustom {
+
+    // Records not yet confirmed by the broker
+    long countBySentAtIsNull();
+}
@@ -0,0 +1,28 @@
+package com.healthplan.indexapi.repository;
+
+import com.healthplan.indexapi.model.OutboxRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbox operations of the relay
+ * Implemented by OutboxRepositoryCustomImpl
+ */
+public interface OutboxRepositoryCustom {
+
+    // Lease up to limit unsent records (oldest first) that no other relay holds, returns the leased records
+    List<OutboxRecord> claimPending(int limit, Duration lease);
+
+    // Broker confirmed: the records are done (and expire later)
+    void markSent(Collection<String> ids);
+
+    // Not confirmed: drop the lease so the next poll publishes them again
+    void release(Collection<String> ids);
+
+    // Records queued since the given time on the clock of the node that queued them (their ObjectId time),
+    // sent or not, without the plan JSON, in _id order
+    List<OutboxRecord> findQueuedSince(Instant since);
+}
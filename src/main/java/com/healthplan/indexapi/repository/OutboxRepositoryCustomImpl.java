@@ -0,0 +1,75 @@
+package com.healthplan.indexapi.repository;
+
+import com.healthplan.indexapi.model.OutboxRecord;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class OutboxRepositoryCustomImpl implements OutboxRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<OutboxRecord> claimPending(int limit, Duration lease) {
+        Instant now = Instant.now();
+
+        // 1. Oldest claimable ids
+        Query pending = Query.query(claimable(now)).with(Sort.by("_id")).limit(limit);
+        pending.fields().include("_id");
+        List<String> ids = mongoTemplate.find(pending, OutboxRecord.class).stream().map(OutboxRecord::getId).toList();
+        if (ids.isEmpty()) return List.of();
+
+        // 2. Lease them under a token of this batch; a relay on another node may have been faster for some
+        String owner = UUID.randomUUID().toString();
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("_id").in(ids)).addCriteria(claimable(now)),
+                Update.update("leaseOwner", owner).set("leaseUntil", now.plus(lease)),
+                OutboxRecord.class);
+
+        // 3. Load the records this batch owns, in publish order
+        Query owned = Query.query(Criteria.where("_id").in(ids).and("leaseOwner").is(owner)).with(Sort.by("_id"));
+        return mongoTemplate.find(owned, OutboxRecord.class);
+    }
+
+    @Override
+    public void markSent(Collection<String> ids) {
+        if (ids.isEmpty()) return;
+        mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(ids)),
+                Update.update("sentAt", Instant.now()).unset("leaseOwner").unset("leaseUntil"),
+                OutboxRecord.class);
+    }
+
+    @Override
+    public void release(Collection<String> ids) {
+        if (ids.isEmpty()) return;
+        mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(ids)),
+                new Update().unset("leaseOwner").unset("leaseUntil").inc("attempts", 1),
+                OutboxRecord.class);
+    }
+
+    @Override
+    public List<OutboxRecord> findQueuedSince(Instant since) {
+        Query query = Query.query(Criteria.where("_id").gte(ObjectId.getSmallestWithDate(Date.from(since))))
+                .with(Sort.by("_id"));
+        query.fields().exclude("message.jsonData");
+        return mongoTemplate.find(query, OutboxRecord.class);
+    }
+
+    // Unsent, and not leased or the lease ran out (relay crashed or stalled)
+    private Criteria claimable(Instant now) {
+        return Criteria.where("sentAt").is(null)
+                .orOperator(Criteria.where("leaseUntil").is(null), Criteria.where("leaseUntil").lt(now));
+    }
+}
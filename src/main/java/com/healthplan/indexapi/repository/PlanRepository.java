@@ -2,9 +2,17 @@ package com.healthplan.indexapi.repository;
 
 import com.healthplan.indexapi.model.PlanEntity;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+public interface PlanRepository extends MongoRepository<PlanEntity, String>, PlanRepositoryCustom {
 
-public interface PlanRepository extends MongoRepository<PlanEntity, String> {
+    // Load only the stored ETag of a Plan document
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'etag': 1 }")
+    Optional<PlanEntity> findETagById(String id);
 
     // Find all documents by parent ID
     List<PlanEntity> findByParentId(String parentId);
@@ -12,6 +20,12 @@ public interface PlanRepository extends MongoRepository<PlanEntity, String> {
     // Find all documents by object type
     List<PlanEntity> findByObjectType(String objectType);
 
+    // Find every document of a plan tree (Plan itself included)
+    List<PlanEntity> findByRootPlanId(String rootPlanId);
+
+    // Find the child documents of many plan trees at once (Plan documents excluded)
+    List<PlanEntity> findByRootPlanIdInAndObjectTypeNot(Collection<String> rootPlanIds, String objectType);
+
     // Delete all documents by parent ID (for cascading delete)
     void deleteByParentId(String parentId);
 }
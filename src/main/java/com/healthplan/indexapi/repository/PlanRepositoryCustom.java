@@ -0,0 +1,41 @@
+package com.healthplan.indexapi.repository;
+
+import com.healthplan.indexapi.model.OutboxRecord;
+import com.healthplan.indexapi.model.PlanEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Custom MongoDB operations that Spring Data cannot derive from method names
+ * Implemented by PlanRepositoryCustomImpl
+ */
+public interface PlanRepositoryCustom {
+
+    // Create plans with their outbox records: Plan documents are inserted, children upserted. A plan whose Plan document
+    // already exists is skipped with its children and outbox records; returns the skipped plan ids.
+    // Outbox enabled: one MongoDB transaction (requires a replica set). Disabled: no transaction, Plan documents first
+    Set<String> insertPlans(List<PlanEntity> documents, List<OutboxRecord> outbox);
+
+    // Change one plan with its outbox records, only if its Plan document still has expectedVersion (null: saved
+    // without a version). The Plan document is replaced if it is among the upserts, deleted if its id is in deleteIds.
+    // Returns false, with nothing written, if it was changed or deleted since it was read.
+    // Outbox enabled: one MongoDB transaction. Disabled: the Plan document's compare-and-set, then the children
+    boolean writePlanChange(String planId, Long expectedVersion, List<PlanEntity> upserts,
+                            Collection<String> deleteIds, List<OutboxRecord> outbox);
+
+    // Which of the given ids already exist (one query, only _id is returned)
+    Set<String> findExistingIds(Collection<String> ids);
+
+    // Raise the deleted-version mark of a plan to version (never lowers it); written before the delete commits
+    void markDeleted(String planId, long version);
+
+    // Deleted-version marks of the given plan ids (ids without a mark are absent)
+    Map<String, Long> findDeletedVersions(Collection<String> planIds);
+
+    // Plan documents read from a server-side cursor, filters are optional (null = any); the stream must be closed
+    Stream<PlanEntity> streamPlans(String org, String planType, int batchSize);
+}
@@ -0,0 +1,297 @@
+package com.healthplan.indexapi.repository;
+
+import com.healthplan.indexapi.model.DeletedPlanVersion;
+import com.healthplan.indexapi.model.OutboxRecord;
+import com.healthplan.indexapi.model.PlanEntity;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+@Slf4j
+@RequiredArgsConstructor
+public class PlanRepositoryCustomImpl implements PlanRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoClient mongoClient;
+
+    // Transactions (replica set) are only needed to commit outbox records with the plan documents
+    @Value("${plan.outbox.enabled}")
+    private boolean transactional;
+
+    @Override
+    public Set<String> insertPlans(List<PlanEntity> documents, List<OutboxRecord> outbox) {
+        Set<String> skipped = new HashSet<>();
+        if (documents.isEmpty() && outbox.isEmpty()) return skipped;
+
+        long start = System.nanoTime();
+        if (transactional) {
+            // A plan created by another request since the caller checked aborts the transaction: skip it, write the rest again
+            while (true) {
+                List<PlanEntity> remaining = documents.stream().filter(d -> !skipped.contains(d.getRootPlanId())).toList();
+                try {
+                    insertInTransaction(remaining, outbox.stream()
+                            .filter(r -> !skipped.contains(r.getMessage().getObjectId())).toList());
+                    break;
+                } catch (DuplicateKeyException e) {
+                    Set<String> existing = findExistingIds(planIds(remaining));
+                    if (existing.isEmpty()) throw e;
+                    skipped.addAll(existing);
+                }
+            }
+        } else {
+            skipped.addAll(insertWithoutTransaction(documents));
+        }
+
+        log.debug("Inserted {} documents ({} plans skipped, already existing), queued {} outbox records in {} ms",
+                documents.size(), skipped.size(), outbox.size(), (System.nanoTime() - start) / 1_000_000);
+        return skipped;
+    }
+
+    @Override
+    public boolean writePlanChange(String planId, Long expectedVersion, List<PlanEntity> upserts,
+                                   Collection<String> deleteIds, List<OutboxRecord> outbox) {
+        long start = System.nanoTime();
+        Document planDocument = null;
+        List<WriteModel<Document>> writes = new ArrayList<>(upserts.size());
+        for (PlanEntity entity : upserts) {
+            Document document = toDocument(entity);
+            if (planId.equals(entity.getId())) {
+                planDocument = document;
+            } else {
+                writes.add(upsert(document));
+            }
+        }
+        List<String> childDeleteIds = deleteIds.stream().filter(id -> !planId.equals(id)).toList();
+        if (!childDeleteIds.isEmpty()) {
+            writes.add(new DeleteManyModel<>(Filters.in("_id", toMongoIds(childDeleteIds))));
+        }
+        if (planDocument == null && !deleteIds.contains(planId)) {
+            throw new IllegalArgumentException("A plan change must write or delete the Plan document: " + planId);
+        }
+
+        // eq(version, null) also matches Plan documents saved before versions existed
+        Bson current = Filters.and(Filters.eq("_id", toMongoId(planId)),
+                Filters.eq("version", expectedVersion));
+        Document replacement = planDocument;
+
+        boolean written;
+        if (transactional) {
+            written = inTransaction(session -> {
+                MongoCollection<Document> plans = collectionOf(PlanEntity.class);
+                long matched = replacement != null
+                        ? plans.replaceOne(session, current, replacement).getMatchedCount()
+                        : plans.deleteOne(session, current).getDeletedCount();
+                if (matched == 0) return false; // changed since it was read, nothing else is written
+
+                write(session, writes, outbox);
+                return true;
+            });
+        } else {
+            // The compare-and-set on the Plan document goes first: a concurrent change of the plan fails there.
+            // If the children's write then fails, the plan is left half-written (no transaction to roll back)
+            try {
+                MongoCollection<Document> plans = collectionOf(PlanEntity.class);
+                long matched = replacement != null
+                        ? plans.replaceOne(current, replacement).getMatchedCount()
+                        : plans.deleteOne(current).getDeletedCount();
+                written = matched > 0;
+                if (written && !writes.isEmpty()) {
+                    collectionOf(PlanEntity.class).bulkWrite(writes, new BulkWriteOptions().ordered(false));
+                }
+            } catch (RuntimeException e) {
+                throw translate(e);
+            }
+        }
+
+        log.debug("Plan {} change (expected version {}) {}: wrote {} documents, deleted {}, queued {} outbox records in {} ms",
+                planId, expectedVersion, written ? "committed" : "rejected", upserts.size(), deleteIds.size(),
+                outbox.size(), (System.nanoTime() - start) / 1_000_000);
+        return written;
+    }
+
+    @Override
+    public Set<String> findExistingIds(Collection<String> ids) {
+        Set<String> existing = new HashSet<>();
+        if (ids.isEmpty()) return existing;
+
+        Query query = Query.query(Criteria.where("_id").in(ids));
+        query.fields().include("_id");
+        for (PlanEntity entity : mongoTemplate.find(query, PlanEntity.class)) {
+            existing.add(entity.getId());
+        }
+        return existing;
+    }
+
+    @Override
+    public void markDeleted(String planId, long version) {
+        mongoTemplate.upsert(
+                Query.query(Criteria.where("_id").is(planId)),
+                new Update().max("version", version).set("deletedAt", Instant.now()),
+                DeletedPlanVersion.class);
+    }
+
+    @Override
+    public Map<String, Long> findDeletedVersions(Collection<String> planIds) {
+        Map<String, Long> versions = new HashMap<>();
+        if (planIds.isEmpty()) return versions;
+
+        for (DeletedPlanVersion mark : mongoTemplate.find(Query.query(Criteria.where("_id").in(planIds)), DeletedPlanVersion.class)) {
+            versions.put(mark.getId(), mark.getVersion());
+        }
+        return versions;
+    }
+
+    @Override
+    public Stream<PlanEntity> streamPlans(String org, String planType, int batchSize) {
+        Query query = Query.query(Criteria.where("objectType").is("plan"));
+        if (org != null) query.addCriteria(Criteria.where("attributes._org").is(org));
+        if (planType != null) query.addCriteria(Criteria.where("attributes.planType").is(planType));
+        query.cursorBatchSize(batchSize); // documents are fetched from the cursor one batch at a time
+
+        return mongoTemplate.stream(query, PlanEntity.class);
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    /**
+     * Run body in a transaction, committed unless it throws
+     * withTransaction retries the whole body on transient errors (e.g. a write conflict with another request)
+     */
+    private boolean inTransaction(Function<ClientSession, Boolean> body) {
+        try (ClientSession session = mongoClient.startSession()) {
+            return session.withTransaction(() -> body.apply(session));
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    private void insertInTransaction(List<PlanEntity> documents, List<OutboxRecord> outbox) {
+        List<WriteModel<Document>> writes = new ArrayList<>(documents.size());
+        for (PlanEntity entity : documents) {
+            Document document = toDocument(entity);
+            writes.add("plan".equals(entity.getObjectType()) ? new InsertOneModel<>(document) : upsert(document));
+        }
+
+        inTransaction(session -> {
+            write(session, writes, outbox);
+            return true;
+        });
+    }
+
+    /**
+     * Plan documents are inserted first; children are only written for the plans whose insert succeeded,
+     * so an existing plan's children are never overwritten. Returns the plans that already existed
+     */
+    private Set<String> insertWithoutTransaction(List<PlanEntity> documents) {
+        List<PlanEntity> planEntities = documents.stream().filter(d -> "plan".equals(d.getObjectType())).toList();
+        Set<String> skipped = new HashSet<>();
+        try {
+            if (!planEntities.isEmpty()) {
+                collectionOf(PlanEntity.class).insertMany(planEntities.stream().map(this::toDocument).toList(),
+                        new InsertManyOptions().ordered(false));
+            }
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCategory() != ErrorCategory.DUPLICATE_KEY) throw translate(e);
+                skipped.add(planEntities.get(error.getIndex()).getId());
+            }
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+
+        List<WriteModel<Document>> children = documents.stream()
+                .filter(d -> !"plan".equals(d.getObjectType()) && !skipped.contains(d.getRootPlanId()))
+                .map(d -> (WriteModel<Document>) upsert(toDocument(d)))
+                .toList();
+        try {
+            if (!children.isEmpty()) {
+                collectionOf(PlanEntity.class).bulkWrite(children, new BulkWriteOptions().ordered(false));
+            }
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+        return skipped;
+    }
+
+    private Set<String> planIds(List<PlanEntity> documents) {
+        Set<String> planIds = new HashSet<>();
+        for (PlanEntity document : documents) planIds.add(document.getRootPlanId());
+        return planIds;
+    }
+
+    private void write(ClientSession session, List<WriteModel<Document>> planWrites, List<OutboxRecord> outbox) {
+        if (!planWrites.isEmpty()) {
+            // UNORDERED: documents are independent, so the server may apply them in parallel
+            collectionOf(PlanEntity.class).bulkWrite(session, planWrites, new BulkWriteOptions().ordered(false));
+        }
+        if (!outbox.isEmpty()) {
+            collectionOf(OutboxRecord.class).insertMany(session, outbox.stream().map(this::toDocument).toList());
+        }
+    }
+
+    private ReplaceOneModel<Document> upsert(Document document) {
+        return new ReplaceOneModel<>(Filters.eq("_id", document.get("_id")), document, new ReplaceOptions().upsert(true));
+    }
+
+    private MongoCollection<Document> collectionOf(Class<?> entityClass) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass));
+    }
+
+    private List<Object> toMongoIds(Collection<String> ids) {
+        return ids.stream().map(this::toMongoId).toList();
+    }
+
+    // _id as MongoTemplate stores it (a valid hex string becomes an ObjectId)
+    private Object toMongoId(String id) {
+        return mongoTemplate.getConverter().convertId(id, ObjectId.class);
+    }
+
+    // Driver exceptions as Spring DataAccessExceptions, like MongoTemplate throws them (e.g. DuplicateKeyException)
+    private RuntimeException translate(RuntimeException e) {
+        DataAccessException translated = mongoTemplate.getExceptionTranslator().translateExceptionIfPossible(e);
+        return translated != null ? translated : e;
+    }
+
+    // Same mapping (_id conversion, _class hint) MongoTemplate applies on save
+    private Document toDocument(Object entity) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(entity, document);
+        return document;
+    }
+}
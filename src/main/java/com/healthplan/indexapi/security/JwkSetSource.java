@@ -0,0 +1,21 @@
+package com.healthplan.indexapi.security;
+
+import com.nimbusds.jose.jwk.JWKSet;
+
+import java.time.Duration;
+
+/**
+ * Source of the JSON Web Key Set used by JwksKeyStore
+ * Default is RemoteJwkSetSource (Google); a local file or stub can be plugged in instead
+ */
+@FunctionalInterface
+public interface JwkSetSource {
+
+    FetchResult fetch() throws Exception;
+
+    /**
+     * Fetched key set and how long it may be cached (null if the source gives no lifetime)
+     */
+    record FetchResult(JWKSet jwkSet, Duration maxAge) {
+    }
+}
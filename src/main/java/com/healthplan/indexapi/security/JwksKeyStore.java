@@ -0,0 +1,125 @@
+package com.healthplan.indexapi.security;
+
+import com.nimbusds.jose.jwk.JWK;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory store of the public keys used to verify JWT signatures, keyed by kid
+ *
+ * Keys are refreshed in the background when the Cache-Control lifetime of the last response runs out,
+ * so token validation never waits on the JWKS endpoint. An unknown kid (key rotation) triggers one
+ * refetch, shared by all concurrent callers and limited to one per minRefetchInterval.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JwksKeyStore {
+
+    private final JwkSetSource jwkSetSource;
+
+    @Value("${security.jwks.default-ttl-seconds}")
+    private long defaultTtlSeconds;
+
+    @Value("${security.jwks.min-refetch-interval-seconds}")
+    private long minRefetchIntervalSeconds;
+
+    private volatile Map<String, JWK> keys = Map.of();
+    private volatile long lastFetchAttemptNanos;
+    private final AtomicReference<CompletableFuture<Duration>> inFlight = new AtomicReference<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "jwks-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void start() {
+        scheduler.execute(this::backgroundRefresh); // Load keys without blocking startup
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the key for kid, or null if it is unknown even after a refetch
+     */
+    public JWK getKey(String keyId) {
+        JWK key = keys.get(keyId);
+        if (key != null) return key;
+
+        if (System.nanoTime() - lastFetchAttemptNanos < TimeUnit.SECONDS.toNanos(minRefetchIntervalSeconds)) {
+            log.warn("Unknown kid {}, JWKS refetch rate-limited", keyId);
+            return null;
+        }
+
+        log.info("Unknown kid {}, refetching JWKS", keyId);
+        try {
+            refresh().get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("JWKS refetch failed: {}", e.getMessage());
+        }
+        return keys.get(keyId);
+    }
+
+    private void backgroundRefresh() {
+        long delaySeconds = minRefetchIntervalSeconds; // Retry delay if this refresh fails
+        try {
+            delaySeconds = refresh().join().toSeconds();
+        } catch (Exception e) {
+            log.error("Background JWKS refresh failed, retrying in {}s: {}", delaySeconds, e.getMessage());
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::backgroundRefresh, delaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Single-flight fetch: concurrent callers share the same in-progress request
+     * Completes with the cache lifetime of the fetched key set
+     */
+    private CompletableFuture<Duration> refresh() {
+        CompletableFuture<Duration> mine = new CompletableFuture<>();
+        CompletableFuture<Duration> current = inFlight.compareAndExchange(null, mine);
+        if (current != null) return current; // Join the fetch already in progress
+
+        try {
+            lastFetchAttemptNanos = System.nanoTime();
+            JwkSetSource.FetchResult result = jwkSetSource.fetch();
+
+            Map<String, JWK> loaded = new HashMap<>();
+            for (JWK jwk : result.jwkSet().getKeys()) {
+                if (jwk.getKeyID() != null) loaded.put(jwk.getKeyID(), jwk);
+            }
+            keys = Map.copyOf(loaded);
+
+            Duration ttl = result.maxAge() != null ? result.maxAge() : Duration.ofSeconds(defaultTtlSeconds);
+            ttl = ttl.compareTo(Duration.ofSeconds(minRefetchIntervalSeconds)) < 0
+                    ? Duration.ofSeconds(minRefetchIntervalSeconds) : ttl;
+            log.info("Loaded {} JWKS keys, next refresh in {}s", loaded.size(), ttl.toSeconds());
+            mine.complete(ttl);
+
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.set(null);
+        }
+        return mine;
+    }
+}
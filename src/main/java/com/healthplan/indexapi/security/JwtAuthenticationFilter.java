@@ -8,12 +8,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 /**
  * Used by SecurityConfig.java through injection
@@ -24,8 +27,20 @@ import java.util.Collections;
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    // Actuator endpoints reachable without a token (liveness checks); metrics require a token like the API
+    public static final String[] PUBLIC_PATHS = {"/actuator/health"};
+
+    // Operations endpoints (reindex, load mode), restricted to ROLE_ADMIN by SecurityConfig
+    public static final String ADMIN_PATHS = "/api/v1/admin/**";
+    private static final String ADMIN_PATH_PREFIX = "/api/v1/admin/";
+
     private final TokenValidator tokenValidator;
 
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return Arrays.asList(PUBLIC_PATHS).contains(request.getRequestURI());
+    }
+
     /**
      * Automatically executed by Spring Security.
      * Extracts the token, validates it using TokenValidator, and sets authenticated principal into SecurityContextHolder
@@ -52,11 +67,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
 
+        // Claims are only read for admin paths, other requests stay on the cached validation
+        boolean admin = request.getRequestURI().startsWith(ADMIN_PATH_PREFIX) && tokenValidator.isAdmin(token);
+
         UsernamePasswordAuthenticationToken authentication =
                 new UsernamePasswordAuthenticationToken(
                         "authenticated-user",  // principal
                         null,                   // credentials: null bc token is verified
-                        Collections.emptyList() // authorities: could have any roles
+                        admin ? List.of(new SimpleGrantedAuthority("ROLE_ADMIN")) : Collections.emptyList()
                 );
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -0,0 +1,46 @@
+package com.healthplan.indexapi.security;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import lombok.RequiredArgsConstructor;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads the JWKS from a URL (https://... or file:...)
+ * Cache lifetime is taken from the Cache-Control max-age of the response
+ */
+@RequiredArgsConstructor
+public class RemoteJwkSetSource implements JwkSetSource {
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+    private static final int TIMEOUT_MS = 5000;
+
+    private final String jwksUri;
+
+    @Override
+    public FetchResult fetch() throws Exception {
+        URLConnection connection = URI.create(jwksUri).toURL().openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+
+        try (InputStream in = connection.getInputStream()) {
+            JWKSet jwkSet = JWKSet.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            return new FetchResult(jwkSet, parseMaxAge(connection.getHeaderField("Cache-Control")));
+        } finally {
+            if (connection instanceof HttpURLConnection http) http.disconnect();
+        }
+    }
+
+    private Duration parseMaxAge(String cacheControl) {
+        if (cacheControl == null) return null;
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        return matcher.find() ? Duration.ofSeconds(Long.parseLong(matcher.group(1))) : null;
+    }
+}
@@ -3,15 +3,18 @@ package com.healthplan.indexapi.security;
 import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.net.URL;
+import java.text.ParseException;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Role: Responsible for performing the cryptographic and claims validation
@@ -19,6 +22,7 @@ import java.util.List;
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class TokenValidator {
 
     private static final List<String> ALLOWED_ISSUERS = List.of(
@@ -26,12 +30,19 @@ public class TokenValidator {
             "accounts.google.com"
     );
 
-    private static final String GOOGLE_JWKS_URI = "https://www.googleapis.com/oauth2/v3/certs";
+    private final JwksKeyStore jwksKeyStore;
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    @Value("${security.admin.emails}")
+    private Set<String> adminEmails;
 
     /**
      * Validates the given JWT string by issuer, expiration time, digital signature using the corresponding public key.
+     * Tokens that were already verified are answered from VerifiedTokenCache until they expire.
      */
     public boolean validateToken(String tokenString) {
+        if (verifiedTokenCache.isVerified(tokenString)) return true;
+
         try {
             SignedJWT signedJWT = SignedJWT.parse(tokenString);
 
@@ -60,6 +71,7 @@ public class TokenValidator {
                 return false;
             }
 
+            verifiedTokenCache.put(tokenString, expirationTime);
             log.info("Token validation successful");
             return true;
 
@@ -70,11 +82,28 @@ public class TokenValidator {
     }
 
     /**
-     * Fetches provided Key ID of the public JWK (JSON Web Key) from the Google JWKS URI
+     * Whether a token that passed validateToken belongs to an administrator: its email is verified and listed
+     * in security.admin.emails. Only the claims are read, the signature was already checked.
+     */
+    public boolean isAdmin(String tokenString) {
+        if (adminEmails.isEmpty()) return false;
+
+        try {
+            JWTClaimsSet claims = SignedJWT.parse(tokenString).getJWTClaimsSet();
+            boolean emailVerified = Boolean.parseBoolean(String.valueOf(claims.getClaim("email_verified"))); // boolean or "true"
+            return emailVerified && adminEmails.contains(claims.getStringClaim("email"));
+
+        } catch (ParseException e) {
+            log.warn("Cannot read token claims: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Looks up provided Key ID of the public JWK (JSON Web Key) in the cached JWKS
      */
-    private JWK getPublicKey(String keyId) throws Exception {
-        JWKSet jwkSet = JWKSet.load(new URL(GOOGLE_JWKS_URI));
-        JWK key = jwkSet.getKeyByKeyId(keyId);
+    private JWK getPublicKey(String keyId) {
+        JWK key = jwksKeyStore.getKey(keyId);
 
         if (key == null) {
             throw new IllegalArgumentException("Public key not found for kid: " + keyId);
@@ -0,0 +1,90 @@
+package com.healthplan.indexapi.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of tokens that already passed TokenValidator, keyed by SHA-256 of the token
+ * An entry lives until the token's exp claim, so a hit can skip parsing and RSA verification
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not found", e);
+        }
+    });
+
+    @Value("${security.token-cache.max-entries}")
+    private int maxEntries;
+
+    // token digest -> expiration time (epoch millis)
+    private final Map<String, Long> expiryByDigest = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * True if this exact token was verified before and has not expired yet
+     */
+    public boolean isVerified(String token) {
+        String key = digest(token);
+        Long expiresAt = expiryByDigest.get(key);
+
+        if (expiresAt != null && expiresAt > System.currentTimeMillis()) {
+            hits.incrementAndGet();
+            return true;
+        }
+        if (expiresAt != null) expiryByDigest.remove(key, expiresAt);
+        misses.incrementAndGet();
+        return false;
+    }
+
+    public void put(String token, Date expirationTime) {
+        if (expiryByDigest.size() >= maxEntries) evict();
+        expiryByDigest.put(digest(token), expirationTime.getTime());
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return expiryByDigest.size();
+    }
+
+    /**
+     * Drop expired entries; if the cache is still full, drop arbitrary entries down to 90% of capacity
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        expiryByDigest.values().removeIf(expiresAt -> expiresAt <= now);
+
+        Iterator<String> keys = expiryByDigest.keySet().iterator();
+        while (expiryByDigest.size() > maxEntries * 9 / 10 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+}
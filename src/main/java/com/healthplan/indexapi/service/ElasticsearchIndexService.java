@@ -1,15 +1,33 @@
 package com.healthplan.indexapi.service;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch.core.IndexRequest;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.IndexOperation;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthplan.indexapi.config.ElasticsearchInitializer;
+import com.healthplan.indexapi.model.PlanQueueMessage;
+import com.healthplan.indexapi.util.PlanMetrics;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Elasticsearch Indexing Service
@@ -20,145 +38,388 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ElasticsearchIndexService {
 
+    private static final String INDEX_NAME = ElasticsearchInitializer.INDEX_ALIAS;
+    private static final int MAX_BULK_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 200;
+
     private final ElasticsearchClient elasticsearchClient;
     private final ObjectMapper objectMapper;
+    private final PlanMetrics metrics;
 
     /**
      * Index Plan to Elasticsearch (create Parent-Child relationship)
+     * Parent and all child documents are sent in a single _bulk request
      */
     public void indexPlan(String objectId, String jsonData) {
+        indexPlan(objectId, jsonData, null, null);
+    }
+
+    /**
+     * Index Plan and the children present in jsonData, delete removed children (incremental UPDATE)
+     * Children missing from jsonData are left as they are
+     * version (external): writes older than the indexed documents are skipped by Elasticsearch
+     */
+    public void indexPlan(String objectId, String jsonData, List<String> removedObjectIds, Long version) {
         try {
             JsonNode planNode = objectMapper.readTree(jsonData);
 
-            // Index main Plan document (parent document)
-            indexPlanDocument(planNode);
+            List<BulkOperation> operations = buildIndexOperations(objectId, planNode, version);
+            addChildDeleteOperations(operations, objectId, removedObjectIds, version);
+            List<BulkFailure> failures = executeBulk(operations);
 
-            // Index PlanCostShares (child document)
-            if (planNode.has("planCostShares")) {
-                indexPlanCostShares(planNode.get("planCostShares"), objectId);
+            if (!failures.isEmpty()) {
+                throw new IllegalStateException("Bulk indexing failed for " + failures.size()
+                        + " of " + operations.size() + " documents: " + failures);
             }
 
-            // Index LinkedPlanServices (child documents)
-            if (planNode.has("linkedPlanServices")) {
-                JsonNode services = planNode.get("linkedPlanServices");
-                if (services.isArray()) {
-                    for (JsonNode service : services) {
-                        indexLinkedPlanService(service, objectId);
+            log.info("Successfully indexed Plan to Elasticsearch: objectId={}, documents={}",
+                    objectId, operations.size());
+
+        } catch (Exception e) {
+            log.error("Failed to index Plan to Elasticsearch: objectId={}, error={}",
+                    objectId, e.getMessage(), e);
+            throw new RuntimeException("Elasticsearch indexing failed", e);
+        }
+    }
+
+    /**
+     * Delete Plan and its child documents from Elasticsearch with one versioned _bulk request
+     * Documents indexed with a newer version (e.g. the plan was created again) are kept.
+     * childIds: from the DELETE message; null for messages written before they were included,
+     * then the children are found with a delete_by_query (unversioned)
+     */
+    public void deletePlan(String objectId, List<String> childIds, Long version) {
+        Timer.Sample sample = metrics.start();
+        try {
+            List<BulkOperation> operations = deleteOperations(objectId, childIds, version);
+            if (childIds == null && !deleteChildDocuments(Set.of(objectId))) {
+                throw new IllegalStateException("child documents not deleted");
+            }
+
+            List<BulkFailure> failures = executeBulk(operations);
+            if (!failures.isEmpty()) {
+                throw new IllegalStateException("Bulk delete failed for " + failures.size()
+                        + " of " + operations.size() + " documents: " + failures);
+            }
+            log.info("Successfully deleted Plan from Elasticsearch: objectId={}, documents={}", objectId, operations.size());
+
+        } catch (Exception e) {
+            log.error("Failed to delete Plan from Elasticsearch: objectId={}, error={}",
+                    objectId, e.getMessage(), e);
+            // Don't throw exception since MongoDB is already deleted, this is just a sync issue
+        } finally {
+            metrics.stop(sample, PlanMetrics.ES_DELETE);
+        }
+    }
+
+    /**
+     * Apply a batch of queue messages (INDEX, UPDATE, DELETE) with one _bulk request
+     * Returns one flag per message: true if all of its documents were written
+     */
+    public boolean[] processBatch(List<PlanQueueMessage> messages) {
+        boolean[] succeeded = new boolean[messages.size()];
+        Arrays.fill(succeeded, true);
+
+        // DELETE messages without child ids (written before they were included): one delete_by_query covers their children
+        Set<String> deletedPlanIds = messages.stream()
+                .filter(m -> "DELETE".equals(m.getOperation()) && m.getRemovedObjectIds() == null)
+                .map(PlanQueueMessage::getObjectId)
+                .collect(Collectors.toSet());
+        boolean childrenDeleted = deletedPlanIds.isEmpty() || deleteChildDocuments(deletedPlanIds);
+
+        List<BulkOperation> operations = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>(); // position of the message each operation belongs to
+
+        for (int i = 0; i < messages.size(); i++) {
+            PlanQueueMessage message = messages.get(i);
+            try {
+                List<BulkOperation> messageOperations;
+                if ("DELETE".equals(message.getOperation())) {
+                    if (message.getRemovedObjectIds() == null && !childrenDeleted) {
+                        succeeded[i] = false;
+                        continue;
                     }
+                    messageOperations = deleteOperations(message.getObjectId(),
+                            message.getRemovedObjectIds(), message.getVersion());
+                } else {
+                    JsonNode planNode = objectMapper.readTree(message.getJsonData());
+                    messageOperations = buildIndexOperations(message.getObjectId(), planNode, message.getVersion());
+                    addChildDeleteOperations(messageOperations, message.getObjectId(),
+                            message.getRemovedObjectIds(), message.getVersion());
+                }
+                for (BulkOperation operation : messageOperations) {
+                    operations.add(operation);
+                    owners.add(i);
                 }
+            } catch (Exception e) {
+                log.error("Failed to build bulk operations: operation={}, objectId={}, error={}",
+                        message.getOperation(), message.getObjectId(), e.getMessage());
+                succeeded[i] = false;
             }
+        }
 
-            log.info("Successfully indexed Plan to Elasticsearch: objectId={}", objectId);
+        try {
+            for (BulkFailure failure : executeBulk(operations)) {
+                succeeded[owners.get(failure.position())] = false;
+            }
+            log.info("Processed batch: messages={}, documents={}", messages.size(), operations.size());
 
         } catch (Exception e) {
-            log.error("Failed to index Plan to Elasticsearch: objectId={}, error={}",
-                    objectId, e.getMessage(), e);
-            throw new RuntimeException("Elasticsearch indexing failed", e);
+            log.error("Bulk request failed for batch of {} messages: {}", messages.size(), e.getMessage(), e);
+            for (int owner : owners) succeeded[owner] = false;
         }
+        return succeeded;
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    /**
+     * A bulk item that still failed after all retries
+     * position: index of the operation in the list passed to executeBulk
+     */
+    record BulkFailure(int position, String id, int status, String reason) {
     }
 
     /**
-     * Delete Plan and all related documents from Elasticsearch
-     * Strategy: Use delete_by_query to delete all child documents, then delete parent
+     * Send operations as one _bulk request
+     * Failed items with a retryable status (429, 5xx) are re-sent alone, up to MAX_BULK_ATTEMPTS
+     * Version conflicts (409) are not failures when a newer version of the document is already indexed (or, for
+     * deletes, exists). An index rejected by a newer delete is a failure: the document would silently stay missing
      */
-    public void deletePlan(String objectId) {
+    List<BulkFailure> executeBulk(List<BulkOperation> operations) throws IOException {
+        List<BulkFailure> failures = new ArrayList<>();
+        if (operations.isEmpty()) return failures;
+        int stale = 0;
+
+        Timer.Sample sample = metrics.start();
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i++) pending.add(i);
+
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<BulkOperation> batch = new ArrayList<>(pending.size());
+            for (int position : pending) batch.add(operations.get(position));
+
+            BulkResponse response = elasticsearchClient.bulk(BulkRequest.of(b -> b.operations(batch)));
+            if (!response.errors()) break;
+
+            List<Integer> retry = new ArrayList<>();
+            List<BulkResponseItem> items = response.items();
+            for (int i = 0; i < items.size(); i++) {
+                BulkResponseItem item = items.get(i);
+                if (item.error() == null) continue;
+                int position = pending.get(i);
+                if (item.status() == 409 && isStale(operations.get(position))) {
+                    stale++;
+                    continue;
+                }
+
+                if (attempt < MAX_BULK_ATTEMPTS && isRetryable(item.status())) {
+                    retry.add(position);
+                } else {
+                    failures.add(new BulkFailure(position, item.id(), item.status(), item.error().reason()));
+                }
+                log.warn("Bulk item failed (attempt {}): id={}, status={}, reason={}",
+                        attempt, item.id(), item.status(), item.error().reason());
+            }
+
+            pending = retry;
+            if (!pending.isEmpty()) sleepBeforeRetry(attempt);
+        }
+        metrics.stop(sample, PlanMetrics.ES_INDEX);
+        metrics.increment("plan.es.documents", "result", "written", operations.size() - failures.size() - stale);
+        if (stale > 0) metrics.increment("plan.es.documents", "result", "stale", stale);
+        if (!failures.isEmpty()) metrics.increment("plan.es.documents", "result", "failed", failures.size());
+        return failures;
+    }
+
+    /**
+     * A version conflict is stale if the operation is a delete, or an index whose document is already indexed
+     * with the same or a newer version. An index conflicting with a delete tombstone (document not found) is not
+     */
+    private boolean isStale(BulkOperation operation) throws IOException {
+        if (!operation.isIndex()) return true;
+
+        IndexOperation<?> index = operation.index();
+        GetResponse<Void> current = elasticsearchClient.get(g -> g
+                        .index(index.index())
+                        .id(index.id())
+                        .routing(index.routing())
+                        .source(src -> src.fetch(false)),
+                Void.class);
+        return current.found() && current.version() != null && index.version() != null
+                && current.version() >= index.version();
+    }
+
+    /**
+     * Delete child documents of the given plans, returns false if the request failed
+     */
+    private boolean deleteChildDocuments(Set<String> planIds) {
+        Timer.Sample sample = metrics.start();
         try {
-            // First delete all child documents (using has_parent query)
+            List<FieldValue> ids = planIds.stream().map(FieldValue::of).toList();
             elasticsearchClient.deleteByQuery(d -> d
-                    .index("plans")
+                    .index(INDEX_NAME)
                     .query(q -> q
                             .hasParent(hp -> hp
                                     .parentType("plan")
                                     .query(pq -> pq
-                                            .term(t -> t
+                                            .terms(t -> t
                                                     .field("objectId")
-                                                    .value(objectId)
+                                                    .terms(tv -> tv.value(ids))
                                             )
                                     )
                             )
                     )
             );
-            log.debug("Deleted child documents for Plan: {}", objectId);
-
-            // Delete parent document (Plan itself)
-            elasticsearchClient.delete(del -> del
-                    .index("plans")
-                    .id(objectId)
-            );
-            log.debug("Deleted Plan document: {}", objectId);
-            log.info("Successfully deleted Plan from Elasticsearch: objectId={}", objectId);
+            log.debug("Deleted child documents for Plans: {}", planIds);
+            return true;
 
         } catch (Exception e) {
-            log.error("Failed to delete Plan from Elasticsearch: objectId={}, error={}",
-                    objectId, e.getMessage(), e);
-            // Don't throw exception since MongoDB is already deleted, this is just a sync issue
+            log.error("Failed to delete child documents for Plans: {}, error={}", planIds, e.getMessage(), e);
+            return false;
+        } finally {
+            metrics.stop(sample, PlanMetrics.ES_DELETE);
         }
     }
 
-    // =========================================================================
-    // Helper methods for the public methods
-    // =========================================================================
+    private BulkOperation deleteOperation(String id, String routing, Long version) {
+        return BulkOperation.of(op -> op
+                .delete(d -> d
+                        .index(INDEX_NAME)
+                        .id(id)
+                        .routing(routing) // children live on their parent's shard
+                        .version(version)
+                        .versionType(version != null ? VersionType.External : null)
+                )
+        );
+    }
 
     /**
-     * Index main Plan document
+     * Versioned delete operations for the children and the Plan document of a deleted plan
      */
-    private void indexPlanDocument(JsonNode planNode) throws Exception {
-        String objectId = planNode.get("objectId").asText();
+    List<BulkOperation> deleteOperations(String planId, List<String> childIds, Long version) {
+        List<BulkOperation> operations = new ArrayList<>();
+        addChildDeleteOperations(operations, planId, childIds, version);
+        operations.add(deleteOperation(planId, null, version));
+        return operations;
+    }
 
-        // Create Plan document data
+    /**
+     * Delete operations for children removed by a PATCH or of a deleted plan (null or empty for INDEX messages)
+     */
+    void addChildDeleteOperations(List<BulkOperation> operations, String planId,
+                                          List<String> removedObjectIds, Long version) {
+        if (removedObjectIds == null) return;
+        for (String removedId : removedObjectIds) {
+            operations.add(deleteOperation(removedId, planId, version));
+        }
+    }
+
+    private boolean isRetryable(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MS * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Build bulk index operations for the Plan (parent) and its children
+     */
+    public List<BulkOperation> buildIndexOperations(String objectId, JsonNode planNode) {
+        return buildIndexOperations(objectId, planNode, null);
+    }
+
+    /**
+     * version: external version set on every document (null = internal versioning)
+     */
+    public List<BulkOperation> buildIndexOperations(String objectId, JsonNode planNode, Long version) {
+        return buildIndexOperations(INDEX_NAME, objectId, planNode, version);
+    }
+
+    /**
+     * index: a concrete index instead of the alias (reindex into a new index)
+     */
+    public List<BulkOperation> buildIndexOperations(String index, String objectId, JsonNode planNode, Long version) {
+        List<BulkOperation> operations = new ArrayList<>();
+
+        // Main Plan document (parent document)
+        operations.add(indexOperation(index, objectId, null, buildPlanDocument(planNode), version));
+
+        // PlanCostShares (child document)
+        if (planNode.has("planCostShares")) {
+            JsonNode costShareNode = planNode.get("planCostShares");
+            operations.add(indexOperation(index, costShareNode.get("objectId").asText(), objectId,
+                    buildPlanCostSharesDocument(costShareNode, objectId), version));
+        }
+
+        // LinkedPlanServices (child documents)
+        if (planNode.has("linkedPlanServices")) {
+            JsonNode services = planNode.get("linkedPlanServices");
+            if (services.isArray()) {
+                for (JsonNode service : services) {
+                    operations.add(indexOperation(index, service.get("objectId").asText(), objectId,
+                            buildLinkedPlanServiceDocument(service, objectId), version));
+                }
+            }
+        }
+        return operations;
+    }
+
+    private BulkOperation indexOperation(String index, String id, String routing, Map<String, Object> document, Long version) {
+        return BulkOperation.of(op -> op
+                .index(i -> i
+                        .index(index)
+                        .id(id)
+                        .routing(routing)  // Important: children use parent ID as routing
+                        .version(version)
+                        .versionType(version != null ? VersionType.External : null)
+                        .document(document)
+                )
+        );
+    }
+
+    /**
+     * Main Plan document
+     */
+    private Map<String, Object> buildPlanDocument(JsonNode planNode) {
         Map<String, Object> planDoc = new HashMap<>();
-        planDoc.put("objectId", objectId);
+        planDoc.put("objectId", planNode.get("objectId").asText());
         planDoc.put("objectType", planNode.get("objectType").asText());
         planDoc.put("_org", planNode.get("_org").asText());
         planDoc.put("planType", planNode.get("planType").asText());
         planDoc.put("creationDate", planNode.get("creationDate").asText());
         // Important: Parent document also needs plan_join field!
         planDoc.put("plan_join", Map.of("name", "plan"));
-
-        // Index to Elasticsearch
-        IndexRequest<Map<String, Object>> request = IndexRequest.of(i -> i
-                .index("plans")
-                .id(objectId)
-                .document(planDoc)
-        );
-
-        elasticsearchClient.index(request);
-        log.debug("Indexed Plan document: {}", objectId);
+        return planDoc;
     }
 
     /**
-     * Index PlanCostShares child document
+     * PlanCostShares child document
      */
-    private void indexPlanCostShares(JsonNode costShareNode, String parentId) throws Exception {
-        String objectId = costShareNode.get("objectId").asText();
-
+    private Map<String, Object> buildPlanCostSharesDocument(JsonNode costShareNode, String parentId) {
         Map<String, Object> doc = new HashMap<>();
-        doc.put("objectId", objectId);
+        doc.put("objectId", costShareNode.get("objectId").asText());
         doc.put("objectType", costShareNode.get("objectType").asText());
         doc.put("_org", costShareNode.get("_org").asText());
         doc.put("deductible", costShareNode.get("deductible").asInt());
         doc.put("copay", costShareNode.get("copay").asInt());
         doc.put("plan_join", Map.of("name", "planCostShares", "parent", parentId));
-
-        IndexRequest<Map<String, Object>> request = IndexRequest.of(i -> i
-                .index("plans")
-                .id(objectId)
-                .routing(parentId)  // Important: use parent ID as routing
-                .document(doc)
-        );
-
-        elasticsearchClient.index(request);
-        log.debug("Indexed PlanCostShares: {} (parent: {})", objectId, parentId);
+        return doc;
     }
 
     /**
-     * Index LinkedPlanService child document
+     * LinkedPlanService child document
      */
-    private void indexLinkedPlanService(JsonNode serviceNode, String parentId) throws Exception {
-        String objectId = serviceNode.get("objectId").asText();
-
+    private Map<String, Object> buildLinkedPlanServiceDocument(JsonNode serviceNode, String parentId) {
         Map<String, Object> doc = new HashMap<>();
-        doc.put("objectId", objectId);
+        doc.put("objectId", serviceNode.get("objectId").asText());
         doc.put("objectType", serviceNode.get("objectType").asText());
         doc.put("_org", serviceNode.get("_org").asText());
         doc.put("plan_join", Map.of("name", "linkedPlanService", "parent", parentId));
@@ -180,15 +441,6 @@ public class ElasticsearchIndexService {
                     "copay", costShares.get("copay").asInt()
             ));
         }
-
-        IndexRequest<Map<String, Object>> request = IndexRequest.of(i -> i
-                .index("plans")
-                .id(objectId)
-                .routing(parentId)  // Important: use parent ID as routing
-                .document(doc)
-        );
-
-        elasticsearchClient.index(request);
-        log.debug("Indexed LinkedPlanService: {} (parent: {})", objectId, parentId);
+        return doc;
     }
 }
@@ -0,0 +1,224 @@
+package com.healthplan.indexapi.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.HealthStatus;
+import co.elastic.clients.elasticsearch.cluster.HealthResponse;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import com.healthplan.indexapi.config.ElasticsearchInitializer;
+import com.healthplan.indexapi.model.LoadModeStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.healthplan.indexapi.config.ElasticsearchInitializer.INDEX_ALIAS;
+
+/**
+ * Bulk-load mode for large imports (e.g. carrier onboarding)
+ *
+ * Entering disables refresh and replicas on the plans index, so Elasticsearch spends the load on indexing
+ * instead of building segments and copying them to replicas; batch listeners take larger batches.
+ * Leaving restores the configured settings, refreshes once and waits for the index to be green
+ * (yellow when the cluster has fewer data nodes than copies of each shard, e.g. a single node).
+ * Documents indexed in load mode only become searchable when it is left.
+ *
+ * The index settings are cluster-wide, so whether load mode is active is read from them (any node may have
+ * entered it). Each node with batch mode on checks them every checkInterval and resizes its own listener;
+ * the node that enters or leaves resizes at once. Without batch mode load mode only changes the index settings.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IndexLoadModeService {
+
+    private static final String BATCH_LISTENER_ID = "planBatchListener";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchInitializer indexInitializer;
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+
+    @Value("${queue.plan.batch.size}")
+    private int batchSize;
+
+    @Value("${plan.load-mode.batch-size}")
+    private int loadBatchSize;
+
+    @Value("${plan.load-mode.health-timeout-seconds}")
+    private long healthTimeoutSeconds;
+
+    @Value("${plan.load-mode.check-interval-seconds}")
+    private long checkIntervalSeconds;
+
+    @Value("${queue.plan.batch.enabled}")
+    private boolean batchEnabled;
+
+    // Batch size this node's listener was last resized to (null: the configured one)
+    private volatile Integer appliedBatchSize;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "load-mode-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void start() {
+        if (!batchEnabled) return; // nothing to resize
+        scheduler.scheduleWithFixedDelay(this::syncBatchSize, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public synchronized LoadModeStatus enterLoadMode() throws IOException {
+        elasticsearchClient.indices().putSettings(p -> p
+                .index(INDEX_ALIAS)
+                .settings(st -> st
+                        .numberOfReplicas("0")
+                        .refreshInterval(t -> t.time("-1"))));
+        resizeBatches(loadBatchSize);
+
+        log.info("Load mode entered: refresh and replicas disabled on '{}', batch size {}", INDEX_ALIAS,
+                batchListener() != null ? loadBatchSize : "unchanged (batch mode off)");
+        return getStatus(null);
+    }
+
+    public synchronized LoadModeStatus leaveLoadMode() throws IOException {
+        resizeBatches(batchSize);
+        indexInitializer.restoreSettings(INDEX_ALIAS);
+        elasticsearchClient.indices().refresh(r -> r.index(INDEX_ALIAS));
+
+        String health = waitForHealth();
+        log.info("Load mode left: settings restored on '{}', health {}", INDEX_ALIAS, health);
+        return getStatus(health);
+    }
+
+    public LoadModeStatus getStatus() throws IOException {
+        return getStatus(null);
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    /**
+     * Resize this node's listener to the batch size of the current mode, e.g. after another node entered load mode
+     */
+    private synchronized void syncBatchSize() {
+        try {
+            if (batchListener() == null) return;
+            IndexSettings settings = indexSettings();
+            boolean active = settings != null && settings.refreshInterval() != null
+                    && "-1".equals(settings.refreshInterval().time());
+
+            int size = active ? loadBatchSize : batchSize;
+            if (size != (appliedBatchSize != null ? appliedBatchSize : batchSize)) {
+                resizeBatches(size);
+                log.info("Load mode {} on '{}': batch size {}", active ? "entered" : "left", INDEX_ALIAS, size);
+            }
+        } catch (Exception e) {
+            log.warn("Load mode check failed: {}", e.getMessage());
+            // Don't throw, the next check retries
+        }
+    }
+
+    private LoadModeStatus getStatus(String health) throws IOException {
+        IndexSettings settings = indexSettings();
+
+        String refreshInterval = settings != null && settings.refreshInterval() != null
+                ? settings.refreshInterval().time() : null;
+        String replicas = settings != null ? settings.numberOfReplicas() : null;
+        boolean active = "-1".equals(refreshInterval);
+
+        SimpleMessageListenerContainer container = batchListener();
+        Integer currentBatchSize = container != null ? (appliedBatchSize != null ? appliedBatchSize : batchSize) : null;
+
+        return new LoadModeStatus(active, refreshInterval, replicas, currentBatchSize, health);
+    }
+
+    /**
+     * Settings of the index behind the alias (null if there is none)
+     */
+    private IndexSettings indexSettings() throws IOException {
+        return elasticsearchClient.indices()
+                .getSettings(g -> g.index(INDEX_ALIAS))
+                .result().values().stream()
+                .findFirst()
+                .map(IndexState::settings)
+                .map(IndexSettings::index)
+                .orElse(null);
+    }
+
+    /**
+     * Batch size and prefetch are read when consumers start, so the running listener is restarted
+     * (stop waits for the batch in progress)
+     */
+    private void resizeBatches(int size) {
+        SimpleMessageListenerContainer container = batchListener();
+        if (container == null) return;
+
+        boolean running = container.isRunning();
+        if (running) container.stop();
+        container.setBatchSize(size);
+        container.setPrefetchCount(size);
+        if (running) container.start();
+        appliedBatchSize = size;
+    }
+
+    /**
+     * PlanIndexWorker's batch listener, null unless queue.plan.batch.enabled=true
+     */
+    private SimpleMessageListenerContainer batchListener() {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(BATCH_LISTENER_ID);
+        if (container instanceof SimpleMessageListenerContainer simple && simple.isAutoStartup()) return simple;
+        return null;
+    }
+
+    /**
+     * Wait up to healthTimeout for the health the cluster can reach: green, or yellow when it has fewer data nodes
+     * than copies of each shard (replicas are never assigned on a single node, waiting for green would always time out).
+     * On timeout the current health is returned.
+     */
+    private String waitForHealth() throws IOException {
+        HealthResponse current = elasticsearchClient.cluster().health(h -> h.index(INDEX_ALIAS));
+        IndexSettings settings = indexSettings();
+        int replicas = settings != null ? parseReplicas(settings.numberOfReplicas()) : 0;
+        HealthStatus target = current.numberOfDataNodes() > replicas ? HealthStatus.Green : HealthStatus.Yellow;
+
+        try {
+            return elasticsearchClient.cluster()
+                    .health(h -> h
+                            .index(INDEX_ALIAS)
+                            .waitForStatus(target)
+                            .timeout(t -> t.time(healthTimeoutSeconds + "s")))
+                    .status().jsonValue();
+        } catch (ElasticsearchException e) {
+            if (e.status() != 408) throw e; // 408: target not reached within the timeout
+            String health = elasticsearchClient.cluster().health(h -> h.index(INDEX_ALIAS)).status().jsonValue();
+            log.warn("Index '{}' not {} within {} s, health {}", INDEX_ALIAS, target.jsonValue(), healthTimeoutSeconds, health);
+            return health;
+        }
+    }
+
+    private int parseReplicas(String replicas) {
+        try {
+            return replicas != null ? Integer.parseInt(replicas) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.healthplan.indexapi.service;
+
+import com.healthplan.indexapi.model.OutboxRecord;
+import com.healthplan.indexapi.repository.OutboxRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes outbox records to RabbitMQ in batches, with publisher confirms
+ *
+ * Runs every pollInterval and right after a plan write on this node (wakeUp). Records are leased
+ * before publishing, so relays on several nodes share the outbox; a record whose relay died is
+ * picked up again once its lease runs out. Confirmed records are marked as sent, the others are
+ * published again on the next run. A record may therefore be published twice, which the versioned
+ * Elasticsearch writes make harmless.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OutboxRelay {
+
+    private final OutboxRepository outboxRepository;
+    private final QueueService queueService;
+
+    @Value("${plan.outbox.enabled}")
+    private boolean enabled;
+
+    @Value("${plan.outbox.batch-size}")
+    private int batchSize;
+
+    @Value("${plan.outbox.poll-interval-ms}")
+    private long pollIntervalMs;
+
+    @Value("${plan.outbox.lease-seconds}")
+    private long leaseSeconds;
+
+    private final AtomicBoolean wakeUpQueued = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        scheduler.scheduleWithFixedDelay(this::relay, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Outbox relay started: batchSize={}, pollInterval={} ms", batchSize, pollIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Publish now instead of at the next poll; runs on the relay thread, concurrent calls share one run
+     */
+    public void wakeUp() {
+        if (enabled && wakeUpQueued.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                wakeUpQueued.set(false);
+                relay();
+            });
+        }
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    /**
+     * Publish batches until the outbox is drained or a batch was not fully confirmed
+     */
+    private void relay() {
+        try {
+            while (relayBatch()) {
+                // next batch
+            }
+        } catch (Exception e) {
+            log.error("Outbox relay failed: {}", e.getMessage());
+            // Don't throw, the next run retries (leased records after their lease)
+        }
+    }
+
+    /**
+     * @return true if a full batch was published and confirmed (more records may be waiting)
+     */
+    private boolean relayBatch() {
+        List<OutboxRecord> records = outboxRepository.claimPending(batchSize, Duration.ofSeconds(leaseSeconds));
+        if (records.isEmpty()) return false;
+
+        boolean[] confirmed = queueService.publishConfirmed(records.stream().map(OutboxRecord::getMessage).toList());
+
+        List<String> sent = new ArrayList<>(records.size());
+        List<String> unconfirmed = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            (confirmed[i] ? sent : unconfirmed).add(records.get(i).getId());
+        }
+        outboxRepository.markSent(sent);
+        outboxRepository.release(unconfirmed);
+
+        log.debug("Relayed {} outbox records, {} unconfirmed", sent.size(), unconfirmed.size());
+        if (!unconfirmed.isEmpty()) {
+            log.warn("{} outbox records not confirmed by the broker, retrying on the next run", unconfirmed.size());
+            return false;
+        }
+        return records.size() == batchSize;
+    }
+}
@@ -0,0 +1,26 @@
+package com.healthplan.indexapi.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Receives plan cache invalidations published by any node (this one included)
+ * Only exists, with its queue and binding, when plan.cache.enabled=true
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "plan.cache.enabled", havingValue = "true")
+public class PlanCacheInvalidationListener {
+
+    private final PlanCacheService planCache;
+
+    @RabbitListener(queues = "#{planCacheInvalidationQueue.name}")
+    public void handleInvalidation(String objectId) {
+        planCache.evict(objectId);
+        log.debug("Invalidated cached Plan: objectId={}", objectId);
+    }
+}
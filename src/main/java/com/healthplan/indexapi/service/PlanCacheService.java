@@ -0,0 +1,163 @@
+package com.healthplan.indexapi.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthplan.indexapi.model.PlanSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Optional read-through cache in front of PlanService.getPlan
+ * Stores the serialized plan (UTF-8 bytes) with its ETag, evicted by total size and TTL.
+ * Invalidations are published to a fanout exchange so every node drops its copy. Callers invalidate after
+ * their write has committed; the broadcast runs on a background thread so the request does not wait for RabbitMQ.
+ *
+ * A read that reconstructed a plan before a concurrent write must not cache it after the write's
+ * invalidation: readers take a stamp before reading, every invalidation bumps the stamp of the plan's
+ * stripe, and put only stores the plan if the stamp is unchanged (checked atomically with the insert).
+ */
+@Slf4j
+@Service
+public class PlanCacheService {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final boolean enabled;
+    private final String invalidationExchange;
+    private final Cache<String, CachedPlan> cache;
+
+    // Invalidation counters, one per stripe of objectIds (a shared stripe only skips a put, never caches stale data)
+    private static final int STAMP_STRIPES = 1024;
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    // objectIds waiting to be broadcast; repeated writes to a plan before the next send are published once
+    private final Set<String> pendingBroadcasts = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean broadcastQueued = new AtomicBoolean();
+
+    private final ExecutorService broadcaster = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cache-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record CachedPlan(byte[] json, String etag, Long version) {
+    }
+
+    public PlanCacheService(RabbitTemplate rabbitTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${plan.cache.enabled}") boolean enabled,
+                            @Value("${plan.cache.max-size-mb}") long maxSizeMb,
+                            @Value("${plan.cache.ttl-seconds}") long ttlSeconds,
+                            @Value("${plan.cache.invalidation-exchange}") String invalidationExchange) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.enabled = enabled;
+        this.invalidationExchange = invalidationExchange;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                .weigher((String objectId, CachedPlan plan) -> plan.json().length + objectId.length())
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "plans"); // cache.gets, cache.evictions, ...
+    }
+
+    /**
+     * Cached plan, or null on a miss (always null when the cache is disabled)
+     */
+    public PlanSnapshot get(String objectId) {
+        if (!enabled) return null;
+
+        CachedPlan plan = cache.getIfPresent(objectId);
+        if (plan == null) return null;
+        return new PlanSnapshot(objectId, plan.json(), plan.etag(), plan.version());
+    }
+
+    /**
+     * Taken before reading a plan from MongoDB, passed to put
+     */
+    public long readStamp(String objectId) {
+        return invalidationStamps.get(stripe(objectId));
+    }
+
+    /**
+     * Cache a plan read after readStamp; skipped if the plan was invalidated since,
+     * and never replaces a newer cached version
+     */
+    public void put(PlanSnapshot plan, long readStamp) {
+        if (!enabled) return;
+        cache.asMap().compute(plan.getObjectId(), (objectId, current) -> {
+            if (invalidationStamps.get(stripe(objectId)) != readStamp) return current; // written meanwhile
+            if (current != null && isNewer(current.version(), plan.getVersion())) return current;
+            return new CachedPlan(plan.getJson(), plan.getEtag(), plan.getVersion());
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        broadcaster.shutdown();
+    }
+
+    /**
+     * Drop the plan on this node now and broadcast the invalidation to all other nodes in the background.
+     * Call after the write has committed, so no node can reload the old plan after receiving it
+     */
+    public void invalidate(String objectId) {
+        if (!enabled) return;
+
+        evict(objectId);
+        pendingBroadcasts.add(objectId);
+        if (broadcastQueued.compareAndSet(false, true)) {
+            broadcaster.execute(() -> {
+                broadcastQueued.set(false);
+                broadcastPending();
+            });
+        }
+    }
+
+    /**
+     * Drop the plan on this node only (invalidation received from the fanout exchange)
+     */
+    public void evict(String objectId) {
+        invalidationStamps.incrementAndGet(stripe(objectId)); // before the removal: a concurrent put sees it
+        cache.invalidate(objectId);
+    }
+
+    // ==============================================================================
+    // Helper methods for the public methods
+    // ==============================================================================
+
+    private void broadcastPending() {
+        Iterator<String> pending = pendingBroadcasts.iterator();
+        while (pending.hasNext()) {
+            String objectId = pending.next();
+            pending.remove();
+            try {
+                rabbitTemplate.convertAndSend(invalidationExchange, "", objectId);
+            } catch (Exception e) {
+                // Other nodes keep a stale copy until the TTL expires
+                log.error("Failed to broadcast cache invalidation: objectId={}, error={}", objectId, e.getMessage());
+            }
+        }
+    }
+
+    private static int stripe(String objectId) {
+        return Math.floorMod(objectId.hashCode(), STAMP_STRIPES);
+    }
+
+    private static boolean isNewer(Long cachedVersion, Long version) {
+        return cachedVersion != null && version != null && cachedVersion > version;
+    }
+}
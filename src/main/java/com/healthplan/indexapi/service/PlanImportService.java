@@ -0,0 +1,124 @@
+package com.healthplan.indexapi.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthplan.indexapi.model.PlanImportResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk import of newline-delimited plans (NDJSON)
+ * Plans are parsed one at a time from the request stream and handed to PlanService in batches,
+ * results are written back per line as each batch completes
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PlanImportService {
+
+    private final PlanService planService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${plan.import.batch-size}")
+    private int batchSize;
+
+    /**
+     * Import all plans from the input stream, writing one PlanImportResult line per plan to the output stream
+     * A malformed line stops the import: earlier plans are kept, the error is reported on its own line
+     * A batch that cannot be written (e.g. MongoDB unavailable) is reported as 500 on each of its lines,
+     * the import continues with the next batch. Result lines are input line numbers, blank lines included
+     */
+    public void importPlans(InputStream in, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(null); // separators are written explicitly
+
+        int imported = 0;
+        List<JsonNode> batch = new ArrayList<>(batchSize);
+        List<Integer> lines = new ArrayList<>(batchSize); // input line of each plan in the batch (blank lines count)
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in);
+             MappingIterator<JsonNode> plans = objectMapper.readValues(parser, JsonNode.class)) {
+            while (true) {
+                JsonNode planNode;
+                int line;
+                try {
+                    if (!plans.hasNextValue()) break;
+                    line = parser.currentTokenLocation().getLineNr(); // first token of the plan
+                    planNode = plans.nextValue();
+                } catch (JsonProcessingException e) {
+                    // Keep what was parsed so far, then report where the stream broke
+                    imported += flush(batch, lines, generator);
+                    int errorLine = e.getLocation() != null ? e.getLocation().getLineNr() : parser.currentLocation().getLineNr();
+                    writeResult(generator, PlanImportResult.failed(errorLine, null, 400,
+                            "Invalid JSON format: " + e.getOriginalMessage()));
+                    log.warn("Bulk import stopped at line {}: {}", errorLine, e.getOriginalMessage());
+                    return;
+                }
+
+                batch.add(planNode);
+                lines.add(line);
+                if (batch.size() >= batchSize) {
+                    imported += flush(batch, lines, generator);
+                    batch.clear();
+                    lines.clear();
+                }
+            }
+            imported += flush(batch, lines, generator);
+        } finally {
+            generator.close();
+        }
+        log.info("Bulk import finished: {} plans imported", imported);
+    }
+
+
+    // ==============================================================================
+    // Helper methods for the public methods
+    // ==============================================================================
+
+    private int flush(List<JsonNode> batch, List<Integer> lines, JsonGenerator generator) throws IOException {
+        if (batch.isEmpty()) return 0;
+
+        List<PlanImportResult> results;
+        try {
+            results = planService.importPlans(batch, lines);
+        } catch (Exception e) {
+            // The 200 is already sent: report the failure on each line of the batch, then go on with the next batch
+            log.error("Bulk import batch at line {} failed: {}", lines.get(0), e.getMessage(), e);
+            results = failedBatch(batch, lines, e);
+        }
+
+        int created = 0;
+        for (PlanImportResult result : results) {
+            if (result.getStatus() == 201) created++;
+            writeResult(generator, result);
+        }
+        generator.flush(); // stream results back as each batch completes
+        return created;
+    }
+
+    private List<PlanImportResult> failedBatch(List<JsonNode> batch, List<Integer> lines, Exception e) {
+        List<PlanImportResult> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            String objectId = batch.get(i).path("objectId").asText(null);
+            results.add(PlanImportResult.failed(lines.get(i), objectId, 500, "Failed to write batch: " + e.getMessage()));
+        }
+        return results;
+    }
+
+    private void writeResult(JsonGenerator generator, PlanImportResult result) throws IOException {
+        objectMapper.writeValue(generator, result);
+        generator.writeRaw('\n');
+    }
+}
@@ -0,0 +1,471 @@
+package com.healthplan.indexapi.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.elasticsearch.indices.add_block.IndicesBlockOptions;
+import co.elastic.clients.elasticsearch.indices.update_aliases.Action;
+import co.elastic.clients.json.JsonData;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.healthplan.indexapi.config.ElasticsearchInitializer;
+import com.healthplan.indexapi.exception.ResourceNotFoundException;
+import com.healthplan.indexapi.model.OutboxRecord;
+import com.healthplan.indexapi.model.PlanEntity;
+import com.healthplan.indexapi.model.PlanQueueMessage;
+import com.healthplan.indexapi.model.ReindexProgress;
+import com.healthplan.indexapi.repository.OutboxRepository;
+import com.healthplan.indexapi.repository.PlanRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static com.healthplan.indexapi.config.ElasticsearchInitializer.INDEX_ALIAS;
+import static com.healthplan.indexapi.config.ElasticsearchInitializer.INDEX_PREFIX;
+
+/**
+ * Rebuild the plans index from MongoDB without downtime (e.g. after a mapping change)
+ *
+ * 1. Create plans_v(N+1) with bulk-load settings (no replicas, no refresh, async translog)
+ * 2. Stream every Plan document from MongoDB; batches are assembled and bulk-indexed by parallel workers
+ * 3. Restore the configured settings, refresh, then move the "plans" alias to the new index in one atomic request
+ * 4. Catch up: plans written while loading are indexed again from MongoDB, and the children removed and plans
+ *    deleted while loading are deleted. They are found by their records in the outbox (so reindexing requires
+ *    the outbox), read every minute during the load so no record expires before the catch-up
+ *
+ * Reads and writes keep using the alias, so they move to the new index at step 3. Documents carry the
+ * plan version as external version, so reindexed documents never overwrite newer ones.
+ * The previous index is kept: startRollback moves the alias back to it and catches it up the same way.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PlanReindexService {
+
+    // A concrete "plans" index is kept under this name when the alias replaces it
+    private static final String LEGACY_INDEX = INDEX_PREFIX + 0;
+
+    private static final Duration CATCH_UP_POLL = Duration.ofMinutes(1);
+
+    // Outbox records are read back this far: another node's clock may run behind, and a transaction may commit
+    // its records up to a minute (MongoDB's transaction lifetime) after creating them
+    private static final Duration CATCH_UP_OVERLAP = Duration.ofMinutes(2);
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchInitializer indexInitializer;
+    private final ElasticsearchIndexService indexService;
+    private final PlanRepository repository;
+    private final OutboxRepository outboxRepository;
+    private final PlanService planService;
+
+    @Value("${plan.reindex.workers}")
+    private int workers;
+
+    @Value("${plan.reindex.batch-size}")
+    private int batchSize;
+
+    @Value("${plan.outbox.enabled}")
+    private boolean outboxEnabled;
+
+    private final AtomicReference<ReindexProgress> current = new AtomicReference<>();
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "plan-reindex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void stop() {
+        runner.shutdownNow();
+    }
+
+    /**
+     * Start a reindex in the background; if one is already running, its progress is returned instead
+     */
+    public synchronized ReindexProgress startReindex() throws IOException {
+        if (!outboxEnabled) {
+            // Deletes during the load are only known from the outbox, without it they would stay in the new index
+            throw new IllegalArgumentException("Reindex requires the outbox (plan.outbox.enabled=true)");
+        }
+        ReindexProgress running = current.get();
+        if (running != null && running.getFinishedAt() == null) return running;
+
+        List<String> previousIndices = aliasTargets();
+        String targetIndex = INDEX_PREFIX + nextIndexVersion();
+        ReindexProgress progress = new ReindexProgress(targetIndex, String.join(",", previousIndices));
+        current.set(progress);
+
+        runner.execute(() -> reindex(progress, previousIndices));
+        return progress;
+    }
+
+    /**
+     * Progress of the running or last reindex on this node (null if none)
+     */
+    public ReindexProgress getProgress() {
+        return current.get();
+    }
+
+    /**
+     * Move the alias back to a kept index (e.g. the previous plans_vN after a bad mapping change) in the background
+     * Plans written since the current index was created are indexed again into it, and deletes replayed, from the
+     * outbox; sent records expire after a day, so changes older than that are not replayed
+     */
+    public synchronized ReindexProgress startRollback(String index) throws IOException {
+        if (!outboxEnabled) {
+            throw new IllegalArgumentException("Rollback requires the outbox (plan.outbox.enabled=true)");
+        }
+        ReindexProgress running = current.get();
+        if (running != null && running.getFinishedAt() == null) {
+            throw new IllegalArgumentException("A reindex into " + running.getTargetIndex() + " is running");
+        }
+        if (!index.startsWith(INDEX_PREFIX) || !elasticsearchClient.indices().exists(e -> e.index(index)).value()) {
+            throw new ResourceNotFoundException(index);
+        }
+        List<String> currentIndices = aliasTargets();
+        if (currentIndices.contains(index)) {
+            throw new IllegalArgumentException("Alias '" + INDEX_ALIAS + "' already points to " + index);
+        }
+
+        Instant since = createdAt(currentIndices);
+        ReindexProgress progress = new ReindexProgress(index, String.join(",", currentIndices));
+        progress.setState(ReindexProgress.State.SWITCHING);
+        current.set(progress);
+
+        runner.execute(() -> rollback(progress, currentIndices, since));
+        return progress;
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    private void reindex(ReindexProgress progress, List<String> previousIndices) {
+        String targetIndex = progress.getTargetIndex();
+        CatchUp catchUp = new CatchUp(Instant.now());
+        log.info("Reindex started: {} -> {}", previousIndices, targetIndex);
+
+        try {
+            // 1. New index, tuned for the load
+            indexInitializer.createIndex(targetIndex, true);
+
+            // 2. Load every plan
+            try (Stream<PlanEntity> plans = repository.streamPlans(null, null, batchSize)) {
+                load(plans, targetIndex, progress, catchUp);
+            }
+            if (progress.getDocumentsFailed().get() > 0) {
+                throw new IllegalStateException(progress.getDocumentsFailed().get()
+                        + " documents failed to index, alias not switched");
+            }
+
+            // 3. Searchable settings, then switch the alias
+            progress.setState(ReindexProgress.State.SWITCHING);
+            indexInitializer.restoreSettings(targetIndex);
+            elasticsearchClient.indices().refresh(r -> r.index(targetIndex));
+            switchAlias(targetIndex, previousIndices);
+
+            // 4. Writes that reached the old index while loading (later ones go through the alias)
+            finishCatchUp(catchUp, targetIndex, progress);
+
+            progress.setState(ReindexProgress.State.DONE);
+            log.info("Reindex done: {} plans, {} documents into {} ({} plans/s); previous index {} kept for rollback",
+                    progress.getPlansIndexed().get(), progress.getDocumentsIndexed().get(), targetIndex,
+                    progress.getPlansPerSecond(), keptIndices(previousIndices));
+
+        } catch (Exception e) {
+            progress.setState(ReindexProgress.State.FAILED);
+            progress.setError(e.getMessage());
+            log.error("Reindex into {} failed: {}", targetIndex, e.getMessage(), e);
+            // Before the switch the alias still points to the previous index; the new index is left for inspection
+        } finally {
+            progress.setFinishedAt(Instant.now());
+        }
+    }
+
+    private void rollback(ReindexProgress progress, List<String> currentIndices, Instant since) {
+        String index = progress.getTargetIndex();
+        log.info("Rollback started: {} -> {}, replaying changes since {}", currentIndices, index, since);
+        if (since.isBefore(Instant.now().minus(Duration.ofDays(1)))) {
+            log.warn("Rollback to {}: outbox records sent more than a day ago have expired, older changes are not replayed",
+                    index);
+        }
+
+        try {
+            CatchUp catchUp = new CatchUp(since);
+            indexInitializer.restoreSettings(index);
+            switchAlias(index, currentIndices);
+            finishCatchUp(catchUp, index, progress);
+
+            progress.setState(ReindexProgress.State.DONE);
+            log.info("Rollback done: alias '{}' points to {}; {} kept", INDEX_ALIAS, index, currentIndices);
+
+        } catch (Exception e) {
+            progress.setState(ReindexProgress.State.FAILED);
+            progress.setError(e.getMessage());
+            log.error("Rollback to {} failed: {}", index, e.getMessage(), e);
+        } finally {
+            progress.setFinishedAt(Instant.now());
+        }
+    }
+
+    /**
+     * Last outbox read, then apply the catch-up; failures are reported since the alias was already switched
+     */
+    private void finishCatchUp(CatchUp catchUp, String index, ReindexProgress progress) throws IOException {
+        progress.setState(ReindexProgress.State.CATCHING_UP);
+        catchUp.poll();
+        applyCatchUp(catchUp, index, progress);
+
+        long failed = progress.getDocumentsFailed().get() + progress.getDeletesFailed().get();
+        if (failed > 0) {
+            throw new IllegalStateException(failed + " documents failed in the catch-up, the alias already points to "
+                    + index);
+        }
+    }
+
+    /**
+     * Read Plan documents from the cursor in batches and index them on the worker pool
+     * The queue holds one batch per worker; when it is full the reading thread indexes the batch
+     * itself, so reading never runs far ahead of indexing. One cursor is enough: assembling and bulk
+     * indexing a batch takes far longer than reading it, so the cursor is not split into _id ranges
+     */
+    private void load(Stream<PlanEntity> plans, String targetIndex, ReindexProgress progress, CatchUp catchUp)
+            throws InterruptedException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers),
+                r -> new Thread(r, "plan-reindex-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            List<PlanEntity> batch = new ArrayList<>(batchSize);
+            Iterator<PlanEntity> cursor = plans.iterator();
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize || !cursor.hasNext()) {
+                    List<PlanEntity> planBatch = batch;
+                    pool.execute(() -> indexBatch(planBatch, targetIndex, progress));
+                    batch = new ArrayList<>(batchSize);
+                    catchUp.pollIfDue();
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Index the current state of the plans written while loading (deleted plans are not found), then delete
+     * the children removed and the plans deleted meanwhile: they may have been read before the removal.
+     * Deletes carry the message's version, so a child added back or a plan created again later is kept
+     */
+    private void applyCatchUp(CatchUp catchUp, String targetIndex, ReindexProgress progress) throws IOException {
+        List<String> planIds = new ArrayList<>(catchUp.planIds);
+        for (int from = 0; from < planIds.size(); from += batchSize) {
+            List<PlanEntity> plans = repository.findAllById(planIds.subList(from, Math.min(from + batchSize, planIds.size())));
+            if (!plans.isEmpty()) indexBatch(plans, targetIndex, progress);
+        }
+
+        List<BulkOperation> operations = new ArrayList<>();
+        for (PlanQueueMessage message : catchUp.removals) {
+            if ("DELETE".equals(message.getOperation())) {
+                operations.addAll(indexService.deleteOperations(message.getObjectId(),
+                        message.getRemovedObjectIds(), message.getVersion()));
+            } else {
+                indexService.addChildDeleteOperations(operations, message.getObjectId(),
+                        message.getRemovedObjectIds(), message.getVersion());
+            }
+        }
+        int failed = indexService.executeBulk(operations).size();
+        progress.getDocumentsDeleted().addAndGet(operations.size() - failed);
+        progress.getDeletesFailed().addAndGet(failed);
+        log.info("Reindex catch-up: {} plans indexed again, {} documents deleted ({} failed)",
+                planIds.size(), operations.size() - failed, failed);
+    }
+
+    private void indexBatch(List<PlanEntity> planEntities, String targetIndex, ReindexProgress progress) {
+        List<BulkOperation> operations = new ArrayList<>();
+        try {
+            List<ObjectNode> plans = planService.assemblePlans(planEntities);
+            for (int i = 0; i < plans.size(); i++) {
+                PlanEntity planEntity = planEntities.get(i);
+                operations.addAll(indexService.buildIndexOperations(
+                        targetIndex, planEntity.getId(), plans.get(i), planEntity.getVersion()));
+            }
+
+            int failed = indexService.executeBulk(operations).size();
+            progress.getDocumentsIndexed().addAndGet(operations.size() - failed);
+            progress.getDocumentsFailed().addAndGet(failed);
+            long indexed = progress.getPlansIndexed().addAndGet(planEntities.size());
+
+            long every = 10L * batchSize;
+            if ((indexed - planEntities.size()) / every != indexed / every) {
+                log.info("Reindex progress: {} plans into {} ({} plans/s)", indexed, targetIndex, progress.getPlansPerSecond());
+            }
+
+        } catch (Exception e) {
+            log.error("Reindex batch of {} plans failed: {}", planEntities.size(), e.getMessage());
+            progress.getDocumentsFailed().addAndGet(Math.max(operations.size(), planEntities.size()));
+        }
+    }
+
+    /**
+     * One _aliases request: the alias leaves the previous indices and points to the new one
+     * A concrete "plans" index (created before aliases were used) must be removed in the same request to free its
+     * name. It is cloned to plans_v0 first so it is kept for a rollback; writes to it fail while it is blocked for
+     * the clone, and the catch-up indexes those plans into the new index
+     */
+    private void switchAlias(String targetIndex, List<String> previousIndices) throws IOException {
+        boolean concrete = previousIndices.contains(INDEX_ALIAS);
+        if (concrete) {
+            elasticsearchClient.indices().addBlock(b -> b.index(INDEX_ALIAS).block(IndicesBlockOptions.Write));
+        }
+
+        try {
+            List<Action> actions = new ArrayList<>();
+            for (String previous : previousIndices) {
+                if (INDEX_ALIAS.equals(previous)) {
+                    elasticsearchClient.indices().clone(c -> c
+                            .index(INDEX_ALIAS)
+                            .target(LEGACY_INDEX)
+                            .settings("index.blocks.write", JsonData.of(false)));
+                    actions.add(Action.of(a -> a.removeIndex(r -> r.index(previous))));
+                } else {
+                    actions.add(Action.of(a -> a.remove(r -> r.index(previous).alias(INDEX_ALIAS))));
+                }
+            }
+            actions.add(Action.of(a -> a.add(add -> add.index(targetIndex).alias(INDEX_ALIAS))));
+
+            elasticsearchClient.indices().updateAliases(u -> u.actions(actions));
+
+        } catch (IOException | RuntimeException e) {
+            if (concrete) {
+                elasticsearchClient.indices().putSettings(p -> p.index(INDEX_ALIAS).settings(st -> st.blocks(b -> b.write(false))));
+            }
+            throw e;
+        }
+
+        if (concrete) {
+            log.warn("Concrete index '{}' deleted to free the alias name, its documents are kept in {}", INDEX_ALIAS, LEGACY_INDEX);
+        }
+        log.info("Alias '{}' switched to {} (was {})", INDEX_ALIAS, targetIndex, previousIndices);
+    }
+
+    /**
+     * Names of the previous indices after the switch (a concrete "plans" index lives on as plans_v0)
+     */
+    private List<String> keptIndices(List<String> previousIndices) {
+        return previousIndices.stream().map(index -> INDEX_ALIAS.equals(index) ? LEGACY_INDEX : index).toList();
+    }
+
+    /**
+     * Earliest creation time of the given indices
+     */
+    private Instant createdAt(List<String> indices) throws IOException {
+        if (indices.isEmpty()) throw new IllegalArgumentException("Alias '" + INDEX_ALIAS + "' points to no index");
+
+        long earliest = Long.MAX_VALUE;
+        for (IndexState state : elasticsearchClient.indices().getSettings(g -> g.index(indices)).result().values()) {
+            IndexSettings settings = state.settings();
+            Long created = settings.creationDate() != null ? settings.creationDate()
+                    : settings.index() != null ? settings.index().creationDate() : null;
+            if (created == null) throw new IllegalStateException("No creation date for the indices " + indices);
+            earliest = Math.min(earliest, created);
+        }
+        return Instant.ofEpochMilli(earliest);
+    }
+
+    /**
+     * Indices behind the alias, or the concrete "plans" index itself, or none
+     */
+    private List<String> aliasTargets() throws IOException {
+        if (elasticsearchClient.indices().existsAlias(e -> e.name(INDEX_ALIAS)).value()) {
+            return new ArrayList<>(elasticsearchClient.indices().getAlias(g -> g.name(INDEX_ALIAS)).result().keySet());
+        }
+        if (elasticsearchClient.indices().exists(e -> e.index(INDEX_ALIAS)).value()) {
+            return List.of(INDEX_ALIAS);
+        }
+        return List.of();
+    }
+
+    /**
+     * Highest existing plans_vN + 1
+     */
+    private int nextIndexVersion() throws IOException {
+        Set<String> indices = elasticsearchClient.indices()
+                .get(g -> g.index(INDEX_PREFIX + "*").allowNoIndices(true))
+                .result().keySet();
+
+        int highest = 0;
+        for (String index : indices) {
+            try {
+                highest = Math.max(highest, Integer.parseInt(index.substring(INDEX_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        return highest + 1;
+    }
+
+    /**
+     * Plans written while loading, collected from their outbox records
+     * Records are read by the time of their ObjectId, each time back to CATCH_UP_OVERLAP before the
+     * previous read; reading a record again is skipped
+     */
+    private final class CatchUp {
+
+        private final Set<String> seen = new HashSet<>();
+        private final Set<String> planIds = new LinkedHashSet<>();
+        private final List<PlanQueueMessage> removals = new ArrayList<>(); // DELETEs and UPDATEs that removed children
+
+        private Instant readFrom;
+        private Instant lastRead;
+
+        CatchUp(Instant since) {
+            readFrom = since.minus(CATCH_UP_OVERLAP);
+            lastRead = since;
+        }
+
+        void pollIfDue() {
+            if (Duration.between(lastRead, Instant.now()).compareTo(CATCH_UP_POLL) >= 0) poll();
+        }
+
+        void poll() {
+            Instant now = Instant.now();
+            for (OutboxRecord record : outboxRepository.findQueuedSince(readFrom)) {
+                if (!seen.add(record.getId())) continue;
+
+                PlanQueueMessage message = record.getMessage();
+                boolean deleted = "DELETE".equals(message.getOperation());
+                if (!deleted) planIds.add(message.getObjectId());
+                if (deleted || message.getRemovedObjectIds() != null && !message.getRemovedObjectIds().isEmpty()) {
+                    removals.add(message);
+                }
+            }
+            readFrom = now.minus(CATCH_UP_OVERLAP);
+            lastRead = now;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.healthplan.indexapi.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthplan.indexapi.config.ElasticsearchInitializer;
+import com.healthplan.indexapi.model.PlanSearchRequest;
+import com.healthplan.indexapi.model.SearchPage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search over the Parent-Child plans index
+ *
+ * Pages are read with search_after (sorted by objectId), never from/size, so deep pagination costs
+ * the same as the first page. The first page is a plain search; a point in time is only opened when
+ * the client follows the cursor, so searches that stop at one page leave nothing open on the cluster.
+ * The PIT id and last sort values travel to the client as an opaque cursor.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PlanSearchService {
+
+    private static final String INDEX_NAME = ElasticsearchInitializer.INDEX_ALIAS;
+    private static final String KEEP_ALIVE = "1m";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ObjectMapper objectMapper;
+
+    // Cursor content: PIT id (null after the first page) and sort values of the last hit
+    private record Cursor(String pit, List<String> after) {
+    }
+
+    /**
+     * Plans (parent documents) matching the criteria, children matched through has_child
+     */
+    public SearchPage searchPlans(PlanSearchRequest request) {
+        List<Query> filters = new ArrayList<>();
+        filters.add(joinType("plan"));
+
+        if (request.getOrg() != null) filters.add(term("_org", request.getOrg()));
+        if (request.getPlanType() != null) filters.add(term("planType", request.getPlanType()));
+
+        if (request.getServiceName() != null) {
+            filters.add(Query.of(q -> q
+                    .hasChild(hc -> hc
+                            .type("linkedPlanService")
+                            .query(cq -> cq.match(m -> m.field("linkedService.name").query(request.getServiceName())))
+                    )
+            ));
+        }
+
+        List<Query> costShareRanges = new ArrayList<>();
+        addRange(costShareRanges, "copay", request.getMinCopay(), request.getMaxCopay());
+        addRange(costShareRanges, "deductible", request.getMinDeductible(), request.getMaxDeductible());
+        if (!costShareRanges.isEmpty()) {
+            filters.add(Query.of(q -> q
+                    .hasChild(hc -> hc
+                            .type("planCostShares")
+                            .query(cq -> cq.bool(b -> b.filter(costShareRanges)))
+                    )
+            ));
+        }
+
+        return search(Query.of(q -> q.bool(b -> b.filter(filters))), request);
+    }
+
+    /**
+     * Child documents (planCostShares, linkedPlanService) of one plan, through has_parent
+     */
+    public SearchPage searchChildren(String planId, PlanSearchRequest request) {
+        List<Query> filters = new ArrayList<>();
+        filters.add(Query.of(q -> q
+                .hasParent(hp -> hp
+                        .parentType("plan")
+                        .query(pq -> pq.term(t -> t.field("objectId").value(planId)))
+                )
+        ));
+        if (request.getType() != null) filters.add(joinType(request.getType()));
+
+        return search(Query.of(q -> q.bool(b -> b.filter(filters))), request);
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    private SearchPage search(Query query, PlanSearchRequest request) {
+        int size = pageSize(request.getSize());
+        Cursor cursor = request.getCursor() != null ? decodeCursor(request.getCursor()) : null;
+
+        String openedPitId = null; // opened by this request, closed if the search fails
+        try {
+            // First page: plain search. The PIT is only opened once the client follows a cursor
+            if (cursor != null && cursor.pit() == null) openedPitId = openPointInTime();
+            String pitId = cursor == null ? null : cursor.pit() != null ? cursor.pit() : openedPitId;
+            List<FieldValue> searchAfter = cursor != null
+                    ? cursor.after().stream().map(FieldValue::of).toList()
+                    : List.of();
+            List<String> fields = request.getFields() != null ? request.getFields() : List.of();
+
+            @SuppressWarnings("rawtypes")
+            SearchResponse<Map> response = elasticsearchClient.search(s -> {
+                        if (pitId != null) s.pit(p -> p.id(pitId).keepAlive(k -> k.time(KEEP_ALIVE)));
+                        else s.index(INDEX_NAME);
+                        return s
+                                .query(query)
+                                .size(size)
+                                .sort(so -> so.field(f -> f.field("objectId"))) // unique keyword, same order with or without PIT
+                                .searchAfter(searchAfter)
+                                .trackTotalHits(t -> t.enabled(cursor == null))
+                                .source(src -> fields.isEmpty()
+                                        ? src.fetch(true)
+                                        : src.filter(f -> f.includes(fields)));
+                    },
+                    Map.class);
+
+            List<Map<String, Object>> hits = new ArrayList<>(response.hits().hits().size());
+            List<FieldValue> lastSort = List.of();
+            for (@SuppressWarnings("rawtypes") Hit<Map> hit : response.hits().hits()) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> source = hit.source() != null ? hit.source() : Map.of();
+                hits.add(source);
+                lastSort = hit.sort();
+            }
+
+            String nextPitId = pitId != null && response.pitId() != null ? response.pitId() : pitId;
+            String nextCursor = null;
+            if (hits.size() == size) {
+                nextCursor = encodeCursor(new Cursor(nextPitId, lastSort.stream().map(FieldValue::stringValue).toList()));
+            } else if (nextPitId != null) {
+                closePointInTime(nextPitId); // Last page
+            }
+            openedPitId = null; // closed above or handed to the client
+
+            Long total = cursor == null && response.hits().total() != null ? response.hits().total().value() : null;
+            return new SearchPage(hits, total, nextCursor);
+
+        } catch (ElasticsearchException e) {
+            if (cursor != null && cursor.pit() != null && e.status() == 404) {
+                throw new IllegalArgumentException("Search cursor expired, start a new search");
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new RuntimeException("Elasticsearch search failed", e);
+        } finally {
+            if (openedPitId != null) closePointInTime(openedPitId);
+        }
+    }
+
+    private String openPointInTime() throws IOException {
+        return elasticsearchClient.openPointInTime(o -> o
+                .index(INDEX_NAME)
+                .keepAlive(k -> k.time(KEEP_ALIVE))
+        ).id();
+    }
+
+    private void closePointInTime(String pitId) {
+        try {
+            elasticsearchClient.closePointInTime(c -> c.id(pitId));
+        } catch (Exception e) {
+            // PIT expires on its own after KEEP_ALIVE
+            log.warn("Failed to close point in time: {}", e.getMessage());
+        }
+    }
+
+    private int pageSize(Integer size) {
+        if (size == null) return DEFAULT_PAGE_SIZE;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return size;
+    }
+
+    private Query joinType(String type) {
+        return term("plan_join", type);
+    }
+
+    private Query term(String field, String value) {
+        return Query.of(q -> q.term(t -> t.field(field).value(value)));
+    }
+
+    private void addRange(List<Query> queries, String field, Integer min, Integer max) {
+        if (min == null && max == null) return;
+        queries.add(Query.of(q -> q
+                .range(r -> r
+                        .number(n -> {
+                            n.field(field);
+                            if (min != null) n.gte(min.doubleValue());
+                            if (max != null) n.lte(max.doubleValue());
+                            return n;
+                        })
+                )
+        ));
+    }
+
+    private String encodeCursor(Cursor cursor) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(cursor));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode search cursor", e);
+        }
+    }
+
+    private Cursor decodeCursor(String cursor) {
+        try {
+            Cursor decoded = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), Cursor.class);
+            if (decoded.after() == null) throw new IllegalArgumentException("incomplete");
+            return decoded;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid search cursor");
+        }
+    }
+}
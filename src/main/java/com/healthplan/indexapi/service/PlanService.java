@@ -1,20 +1,35 @@
 package com.healthplan.indexapi.service;
 
+import com.healthplan.indexapi.exception.PreconditionFailedException;
 import com.healthplan.indexapi.exception.ResourceAlreadyExistsException;
+import com.healthplan.indexapi.exception.ResourceModifiedException;
 import com.healthplan.indexapi.exception.ResourceNotFoundException;
 import com.healthplan.indexapi.model.PlanEntity;
+import com.healthplan.indexapi.model.OutboxRecord;
+import com.healthplan.indexapi.model.PlanImportResult;
+import com.healthplan.indexapi.model.PlanQueueMessage;
+import com.healthplan.indexapi.model.PlanSnapshot;
 import com.healthplan.indexapi.repository.PlanRepository;
 import com.healthplan.indexapi.util.ETagGenerator;
+import com.healthplan.indexapi.util.JsonMerge;
 import com.healthplan.indexapi.util.JsonSchemaValidator;
+import com.healthplan.indexapi.util.PlanDocumentMapper;
+import com.healthplan.indexapi.util.PlanMetrics;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -25,21 +40,35 @@ public class PlanService {
     private final JsonSchemaValidator validator;
     private final ObjectMapper objectMapper;
     private final QueueService queueService;
+    private final OutboxRelay outboxRelay;
+    private final PlanCacheService planCache;
+    private final PlanMetrics metrics;
+    private final PlanDocumentMapper documentMapper;
 
-    public String createPlan(String jsonString) {
-        validator.validate(jsonString);
+    @Value("${plan.export.batch-size}")
+    private int exportBatchSize;
 
-        try {
-            JsonNode planNode = objectMapper.readTree(jsonString);
-            String planId = planNode.get("objectId").asText();
+    @Value("${plan.etag.algorithm}")
+    private ETagGenerator.Algorithm etagAlgorithm = ETagGenerator.Algorithm.MD5;
+
+    @Value("${plan.outbox.enabled}")
+    private boolean outboxEnabled;
 
+    /**
+     * planNode is the request body parsed once by the controller; it is validated,
+     * decomposed and serialized a single time for ETag, response and queue message
+     */
+    public PlanSnapshot createPlan(JsonNode planNode) {
+        validate(planNode);
+        String planId = planNode.get("objectId").asText();
+
+        try {
             if (repository.existsById(planId)) throw new ResourceAlreadyExistsException(planId);
 
-            savePlanDocuments(planNode); // Decompose and save to MongoDB as separate documents
+            Long deletedVersion = repository.findDeletedVersions(List.of(planId)).get(planId); // created again after a DELETE
+            PlanSnapshot saved = savePlanDocuments(planNode, nextVersion(deletedVersion)); // Decompose and save to MongoDB as separate documents
             log.info("Plan saved to MongoDB: objectId={}", planId);
-
-            queueService.sendIndexMessage(planId, jsonString);
-            return planId;
+            return saved;
 
         } catch (ResourceAlreadyExistsException e) {
             throw e;
@@ -48,11 +77,17 @@ public class PlanService {
         }
     }
 
-    public String getPlan(String objectId) {
-        try {
-            if (!repository.existsById(objectId)) throw new ResourceNotFoundException(objectId);
+    public PlanSnapshot getPlan(String objectId) {
+        PlanSnapshot cached = planCache.get(objectId);
+        if (cached != null) return cached;
 
-            return reconstructPlanJson(objectId); // Reconstruct complete JSON from decomposed documents
+        try {
+            long readStamp = planCache.readStamp(objectId); // a write during the read keeps the result out of the cache
+            Timer.Sample sample = metrics.start();
+            PlanSnapshot plan = reconstructPlan(objectId); // Reconstruct complete JSON from decomposed documents
+            metrics.stop(sample, PlanMetrics.RECONSTRUCTION);
+            planCache.put(plan, readStamp);
+            return plan;
 
         } catch (ResourceNotFoundException e) {
             throw e;
@@ -61,265 +96,491 @@ public class PlanService {
         }
     }
 
-    @Transactional
+    /**
+     * Create a batch of plans (bulk import): one existence query and one MongoDB transaction
+     * (INDEX messages included) for the whole batch. lines holds the input line of each plan.
+     * Returns one result per plan, in input order.
+     */
+    public List<PlanImportResult> importPlans(List<JsonNode> planNodes, List<Integer> lines) {
+        PlanImportResult[] results = new PlanImportResult[planNodes.size()];
+        Map<String, Integer> candidates = new LinkedHashMap<>(); // objectId -> position
+
+        // 1. Validate every plan and reject duplicates inside the batch
+        for (int i = 0; i < planNodes.size(); i++) {
+            JsonNode planNode = planNodes.get(i);
+            try {
+                validate(planNode);
+                String planId = planNode.get("objectId").asText();
+                if (candidates.putIfAbsent(planId, i) != null) {
+                    results[i] = PlanImportResult.failed(lines.get(i), planId, 409, "Duplicate objectId in request: " + planId);
+                }
+            } catch (IllegalArgumentException e) {
+                results[i] = PlanImportResult.failed(lines.get(i), null, 400, e.getMessage());
+            }
+        }
+
+        // 2. Reject plans that already exist (one query for the batch)
+        rejectExisting(repository.findExistingIds(candidates.keySet()), candidates, results, lines);
+
+        // 3. Decompose all remaining plans, above the version of an earlier plan with the same objectId
+        Map<String, Long> deletedVersions = repository.findDeletedVersions(candidates.keySet());
+        Map<String, PreparedPlan> preparedPlans = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
+            int i = candidate.getValue();
+            try {
+                Long deletedVersion = deletedVersions.get(candidate.getKey());
+                preparedPlans.put(candidate.getKey(), preparePlan(planNodes.get(i), nextVersion(deletedVersion)));
+            } catch (Exception e) {
+                results[i] = PlanImportResult.failed(lines.get(i), candidate.getKey(), 400, e.getMessage());
+            }
+        }
+
+        // 4. Save them with their INDEX messages. Plans created by another request since step 2 are skipped: 409
+        List<PlanEntity> entities = new ArrayList<>();
+        List<PlanQueueMessage> messages = new ArrayList<>(preparedPlans.size());
+        for (PreparedPlan prepared : preparedPlans.values()) {
+            entities.addAll(prepared.entities());
+            messages.add(indexMessage(prepared.snapshot()));
+        }
+        Set<String> skipped = insertDocuments(entities, messages);
+        preparedPlans.keySet().removeAll(skipped);
+        rejectExisting(skipped, candidates, results, lines);
+
+        for (Map.Entry<String, PreparedPlan> prepared : preparedPlans.entrySet()) {
+            int i = candidates.get(prepared.getKey());
+            results[i] = PlanImportResult.created(lines.get(i), prepared.getKey(), prepared.getValue().snapshot().getEtag());
+        }
+        log.info("Imported {} of {} plans to MongoDB", preparedPlans.size(), planNodes.size());
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Write every plan (optionally filtered by _org / planType) as NDJSON, one plan per line
+     * Plan documents come from a server-side cursor; the children of each batch of plans
+     * are loaded with one $in query, so memory stays bounded by the batch size
+     */
+    public void exportPlans(String org, String planType, OutputStream out) throws IOException {
+        int exported = 0;
+        List<PlanEntity> batch = new ArrayList<>(exportBatchSize);
+
+        try (Stream<PlanEntity> plans = repository.streamPlans(org, planType, exportBatchSize);
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null); // separators are written explicitly
+
+            Iterator<PlanEntity> cursor = plans.iterator();
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= exportBatchSize || !cursor.hasNext()) {
+                    exported += writePlans(batch, generator);
+                    batch.clear();
+                }
+            }
+        }
+        log.info("Exported {} plans (org={}, planType={})", exported, org, planType);
+    }
+
+    /**
+     * Plan JSON of a batch of Plan documents (export, reindex), in the same order
+     * The children of the whole batch are loaded with a single query
+     */
+    public List<ObjectNode> assemblePlans(List<PlanEntity> planEntities) {
+        List<String> planIds = planEntities.stream().map(PlanEntity::getId).toList();
+        Map<String, List<PlanEntity>> documentsByPlan = new HashMap<>();
+        for (PlanEntity child : repository.findByRootPlanIdInAndObjectTypeNot(planIds, "plan")) {
+            documentsByPlan.computeIfAbsent(child.getRootPlanId(), k -> new ArrayList<>()).add(child);
+        }
+
+        List<ObjectNode> plans = new ArrayList<>(planEntities.size());
+        for (PlanEntity planEntity : planEntities) {
+            List<PlanEntity> documents;
+            if (planEntity.getRootPlanId() == null) {
+                documents = loadLegacyPlanDocuments(planEntity.getId()); // Documents saved before rootPlanId existed
+            } else {
+                documents = documentsByPlan.getOrDefault(planEntity.getId(), new ArrayList<>());
+                documents.add(planEntity);
+            }
+            plans.add(documentMapper.assemble(planEntity.getId(), documents));
+        }
+        return plans;
+    }
+
+    /**
+     * ETag stored on the Plan document, answers conditional requests without reconstructing the plan
+     */
+    public String getETag(String objectId) {
+        PlanSnapshot cached = planCache.get(objectId);
+        if (cached != null) return cached.getEtag();
+
+        PlanEntity planEntity = repository.findETagById(objectId)
+                .orElseThrow(() -> new ResourceNotFoundException(objectId));
+
+        if (planEntity.getEtag() != null) return planEntity.getEtag();
+        return getPlan(objectId).getEtag(); // Plan saved before ETags were stored
+    }
+
     public void deletePlan(String objectId) {
-        if (!repository.existsById(objectId)) throw new ResourceNotFoundException(objectId);
+        List<PlanEntity> documents = loadPlanDocuments(objectId);
+        if (documents.isEmpty()) throw new ResourceNotFoundException(objectId);
 
         try {
-            deletePlanDocuments(objectId); // Delete all related documents recursively
-            log.info("Plan deleted from MongoDB: objectId={}", objectId);
-
-            queueService.sendDeleteMessage(objectId);
+            // Delete the Plan and all related documents, together with the DELETE message
+            Long storedVersion = storedVersion(objectId, documents);
+            long version = nextVersion(storedVersion);
+            List<String> documentIds = documents.stream().map(PlanEntity::getId).toList();
+            List<String> childIds = documents.stream() // Elasticsearch documents of the plan's children
+                    .filter(document -> objectId.equals(document.getParentId()))
+                    .map(PlanEntity::getId)
+                    .toList();
+            PlanQueueMessage message = PlanQueueMessage.delete(objectId, childIds, version);
+            repository.markDeleted(objectId, version); // before the delete: a plan created again starts above it
+            if (!writeDocuments(objectId, storedVersion, List.of(), documentIds, List.of(message))) {
+                throw new ResourceModifiedException(objectId);
+            }
+            planCache.invalidate(objectId);
+            log.info("Plan deleted from MongoDB: objectId={}, documents={}", objectId, documentIds.size());
 
+        } catch (ResourceModifiedException e) {
+            throw e;
         } catch (Exception e) {
             throw new IllegalArgumentException("Failed to delete plan: " + e.getMessage(), e);
         }
     }
 
-    @Transactional
-    public String patchPlan(String objectId, String patchBody) {
-        String existingJson = getPlan(objectId);
+    /**
+     * ifMatch (optional) is compared with the ETag of the documents the patch is applied to.
+     * The write only succeeds if the plan was not changed since it was read: otherwise 412 for a conditional
+     * request, 409 for an unconditional one.
+     * keyedArrayMerge: array elements are matched by objectId (updated in place, appended if new,
+     * removed when marked with "_remove": true) instead of the whole array being replaced
+     */
+    public PlanSnapshot patchPlan(String objectId, String ifMatch, JsonNode patchNode, boolean keyedArrayMerge) {
+        List<PlanEntity> storedDocuments = loadPlanDocuments(objectId);
+        ObjectNode existingNode = documentMapper.assemble(objectId, storedDocuments); // Stored plan as a tree, no JSON string round trip
 
         try {
-            JsonNode existingNode = objectMapper.readTree(existingJson);
-            JsonNode patchNode = objectMapper.readTree(patchBody);
-            JsonNode mergedNode = deepMerge(existingNode, patchNode);
-            String mergedJson = objectMapper.writeValueAsString(mergedNode);
+            if (ifMatch != null && !ifMatch.equals(storedETag(objectId, storedDocuments, existingNode))) {
+                throw new PreconditionFailedException(objectId);
+            }
+
+            JsonNode mergedNode = JsonMerge.deepMerge(existingNode, patchNode, keyedArrayMerge);
 
-            validator.validate(mergedJson);
+            validate(mergedNode);
+            if (!objectId.equals(mergedNode.get("objectId").asText())) {
+                throw new IllegalArgumentException("objectId of a plan cannot be changed");
+            }
+
+            // Diff against the stored documents: only changed, added or removed documents are written
+            Long storedVersion = storedVersion(objectId, storedDocuments);
+            PreparedPlan prepared = preparePlan(mergedNode, storedVersion); // same version: unchanged Plan document compares equal
+            PlanDiff diff = diffPlan(objectId, storedDocuments, prepared.entities());
+            if (diff.upserts().isEmpty() && diff.deleteIds().isEmpty()) {
+                log.info("Plan unchanged by PATCH: objectId={}", objectId);
+                return storedSnapshot(objectId, storedDocuments); // same body and ETag as a GET
+            }
 
-            // Delete old documents and save new ones
-            deletePlanDocuments(objectId);
-            savePlanDocuments(objectMapper.readTree(mergedJson));
+            // Something changed: the Plan document is always written with the next version
+            long version = nextVersion(storedVersion);
+            PlanEntity planEntity = prepared.entities().get(0);
+            planEntity.setVersion(version);
+            prepared.snapshot().setVersion(version);
+            if (!diff.upserts().contains(planEntity)) diff.upserts().add(planEntity);
 
-            log.info("Plan updated in MongoDB: objectId={}", objectId);
+            // Elasticsearch only re-indexes the changed children and deletes the removed ones
+            String changedJson = objectMapper.writeValueAsString(changedSubset(mergedNode, diff.changedIndexIds()));
+            PlanQueueMessage message = PlanQueueMessage.update(objectId, changedJson, diff.removedIndexIds(), version);
+
+            if (!writeDocuments(objectId, storedVersion, diff.upserts(), diff.deleteIds(), List.of(message))) {
+                throw ifMatch != null ? new PreconditionFailedException(objectId) : new ResourceModifiedException(objectId);
+            }
+            planCache.invalidate(objectId);
 
-            queueService.sendUpdateMessage(objectId, mergedJson);
-            return mergedJson;
+            log.info("Plan updated in MongoDB: objectId={}, written={}, deleted={}",
+                    objectId, diff.upserts().size(), diff.deleteIds().size());
+            return prepared.snapshot();
 
+        } catch (PreconditionFailedException | ResourceModifiedException e) {
+            throw e;
         } catch (Exception e) {
             throw new IllegalArgumentException("Failed to patch plan: " + e.getMessage(), e);
         }
     }
 
-    public String generateETag(String jsonString) {
-        return ETagGenerator.generate(jsonString);
-    }
-
     // =========================================================================
     // Helper methods for the public methods
     // =========================================================================
 
     /**
      * Decompose Plan JSON and save as separate MongoDB documents
+     * All documents of the plan (and its INDEX message) are written in a single MongoDB transaction (outbox enabled).
+     * The ETag is computed once here and stored on the Plan document.
      */
-    private void savePlanDocuments(JsonNode planNode) {
-        String planId = planNode.get("objectId").asText();
-
-        // 1. Save main Plan document
-        Map<String, Object> planAttrs = new HashMap<>();
-        planAttrs.put("_org", planNode.get("_org").asText());
-        planAttrs.put("planType", planNode.get("planType").asText());
-        planAttrs.put("creationDate", planNode.get("creationDate").asText());
-
-        PlanEntity planEntity = PlanEntity.builder()
-                .id(planId)
-                .objectType("plan")
-                .parentId(null)
-                .attributes(planAttrs)
-                .build();
-        repository.save(planEntity);
-        log.debug("Saved Plan document: {}", planId);
-
-        // 2. Save PlanCostShares
-        if (planNode.has("planCostShares")) {
-            JsonNode costShare = planNode.get("planCostShares");
-            String costShareId = costShare.get("objectId").asText();
-
-            Map<String, Object> attrs = new HashMap<>();
-            attrs.put("_org", costShare.get("_org").asText());
-            attrs.put("deductible", costShare.get("deductible").asInt());
-            attrs.put("copay", costShare.get("copay").asInt());
-
-            PlanEntity entity = PlanEntity.builder()
-                    .id(costShareId)
-                    .objectType("membercostshare")
-                    .parentId(planId)
-                    .attributes(attrs)
-                    .build();
-            repository.save(entity);
-            log.debug("Saved PlanCostShares: {}", costShareId);
+    private PlanSnapshot savePlanDocuments(JsonNode planNode, long version) throws IOException {
+        PreparedPlan prepared = preparePlan(planNode, version);
+        String planId = prepared.snapshot().getObjectId();
+        if (!insertDocuments(prepared.entities(), List.of(indexMessage(prepared.snapshot()))).isEmpty()) {
+            throw new ResourceAlreadyExistsException(planId); // created by a concurrent request since the check
         }
+        log.debug("Saved Plan {} as {} documents", prepared.snapshot().getObjectId(), prepared.entities().size());
+        return prepared.snapshot();
+    }
 
-        // 3. Save LinkedPlanServices and nested objects
-        if (planNode.has("linkedPlanServices")) {
-            JsonNode servicesArray = planNode.get("linkedPlanServices");
-            for (JsonNode ps : servicesArray) {
-                String psId = ps.get("objectId").asText();
-
-                // 3.1 Save LinkedPlanService
-                Map<String, Object> psAttrs = new HashMap<>();
-                psAttrs.put("_org", ps.get("_org").asText());
-
-                PlanEntity psEntity = PlanEntity.builder()
-                        .id(psId)
-                        .objectType("planservice")
-                        .parentId(planId)
-                        .attributes(psAttrs)
-                        .build();
-                repository.save(psEntity);
-                log.debug("Saved LinkedPlanService: {}", psId);
-
-                // 3.2 Save LinkedService
-                if (ps.has("linkedService")) {
-                    JsonNode service = ps.get("linkedService");
-                    String serviceId = service.get("objectId").asText();
-
-                    Map<String, Object> sAttrs = new HashMap<>();
-                    sAttrs.put("_org", service.get("_org").asText());
-                    sAttrs.put("name", service.get("name").asText());
-
-                    PlanEntity sEntity = PlanEntity.builder()
-                            .id(serviceId)
-                            .objectType("service")
-                            .parentId(psId)
-                            .attributes(sAttrs)
-                            .build();
-                    repository.save(sEntity);
-                    log.debug("Saved Service: {}", serviceId);
-                }
+    /**
+     * Decomposed documents of a plan, ready to save, with the JSON and ETag they produce
+     */
+    private record PreparedPlan(List<PlanEntity> entities, PlanSnapshot snapshot) {
+    }
 
-                // 3.3 Save PlanServiceCostShares
-                if (ps.has("planserviceCostShares")) {
-                    JsonNode psCostShare = ps.get("planserviceCostShares");
-                    String pscsId = psCostShare.get("objectId").asText();
-
-                    Map<String, Object> pscsAttrs = new HashMap<>();
-                    pscsAttrs.put("_org", psCostShare.get("_org").asText());
-                    pscsAttrs.put("deductible", psCostShare.get("deductible").asInt());
-                    pscsAttrs.put("copay", psCostShare.get("copay").asInt());
-
-                    PlanEntity pscsEntity = PlanEntity.builder()
-                            .id(pscsId)
-                            .objectType("membercostshare")
-                            .parentId(psId)
-                            .attributes(pscsAttrs)
-                            .build();
-                    repository.save(pscsEntity);
-                    log.debug("Saved PlanServiceCostShares: {}", pscsId);
-                }
+    /**
+     * Changes between the stored documents of a plan and the documents of the patched plan
+     * changedIndexIds / removedIndexIds are Elasticsearch documents (plan, planCostShares, linkedPlanService),
+     * which embed their own children
+     */
+    record PlanDiff(List<PlanEntity> upserts, List<String> deleteIds,
+                    Set<String> changedIndexIds, List<String> removedIndexIds) {
+    }
+
+    static PlanDiff diffPlan(String planId, List<PlanEntity> stored, List<PlanEntity> patched) {
+        Map<String, PlanEntity> storedById = new HashMap<>();
+        for (PlanEntity entity : stored) storedById.put(entity.getId(), entity);
+
+        Set<String> patchedIds = new HashSet<>();
+        List<PlanEntity> upserts = new ArrayList<>();
+        Set<String> changedIndexIds = new HashSet<>();
+        for (PlanEntity entity : patched) {
+            patchedIds.add(entity.getId());
+            if (!entity.equals(storedById.get(entity.getId()))) { // new, or any field changed (the Plan's ETag too)
+                upserts.add(entity);
+                if (!planId.equals(entity.getId())) changedIndexIds.add(indexDocumentId(planId, entity));
+            }
+        }
+
+        List<String> deleteIds = new ArrayList<>();
+        List<String> removedIndexIds = new ArrayList<>();
+        for (PlanEntity entity : stored) {
+            if (patchedIds.contains(entity.getId())) continue;
+            deleteIds.add(entity.getId());
+            if (planId.equals(entity.getParentId())) {
+                removedIndexIds.add(entity.getId());
+            } else if (patchedIds.contains(entity.getParentId())) {
+                changedIndexIds.add(entity.getParentId()); // child of a kept LinkedPlanService was replaced
             }
         }
+        return new PlanDiff(upserts, deleteIds, changedIndexIds, removedIndexIds);
     }
 
     /**
-     * Reconstruct complete Plan JSON from decomposed MongoDB documents
+     * Elasticsearch document a MongoDB document belongs to: direct children of the Plan are their own documents,
+     * linkedService and planserviceCostShares are embedded in their LinkedPlanService
      */
-    private String reconstructPlanJson(String planId) throws Exception {
-        // 1. Get main Plan document
-        PlanEntity planEntity = repository.findById(planId)
-                .orElseThrow(() -> new ResourceNotFoundException(planId));
+    private static String indexDocumentId(String planId, PlanEntity entity) {
+        return planId.equals(entity.getParentId()) ? entity.getId() : entity.getParentId();
+    }
 
-        // 2. Build Plan JSON
-        Map<String, Object> planJson = new HashMap<>();
-        planJson.put("objectId", planId);
-        planJson.put("objectType", "plan");
-        planJson.putAll(planEntity.getAttributes());
-
-        // 3. Get and add PlanCostShares
-        List<PlanEntity> directChildren = repository.findByParentId(planId);
-        for (PlanEntity child : directChildren) {
-            if ("membercostshare".equals(child.getObjectType())) {
-                // This is PlanCostShares
-                Map<String, Object> costShare = new HashMap<>();
-                costShare.put("objectId", child.getId());
-                costShare.put("objectType", child.getObjectType());
-                costShare.putAll(child.getAttributes());
-                planJson.put("planCostShares", costShare);
-
-            } else if ("planservice".equals(child.getObjectType())) {
-                // This is LinkedPlanService - need to get its children
-                if (!planJson.containsKey("linkedPlanServices")) {
-                    planJson.put("linkedPlanServices", new ArrayList<>());
-                }
+    /**
+     * Plan fields plus only the children whose Elasticsearch document changed
+     */
+    static ObjectNode changedSubset(JsonNode planNode, Set<String> changedIndexIds) {
+        ObjectNode subset = planNode.deepCopy();
 
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> services = (List<Map<String, Object>>) planJson.get("linkedPlanServices");
-
-                Map<String, Object> psJson = new HashMap<>();
-                psJson.put("objectId", child.getId());
-                psJson.put("objectType", child.getObjectType());
-                psJson.putAll(child.getAttributes());
-
-                // Get children of this PlanService
-                List<PlanEntity> psChildren = repository.findByParentId(child.getId());
-                for (PlanEntity psChild : psChildren) {
-                    if ("service".equals(psChild.getObjectType())) {
-                        Map<String, Object> service = new HashMap<>();
-                        service.put("objectId", psChild.getId());
-                        service.put("objectType", psChild.getObjectType());
-                        service.putAll(psChild.getAttributes());
-                        psJson.put("linkedService", service);
-
-                    } else if ("membercostshare".equals(psChild.getObjectType())) {
-                        Map<String, Object> costShare = new HashMap<>();
-                        costShare.put("objectId", psChild.getId());
-                        costShare.put("objectType", psChild.getObjectType());
-                        costShare.putAll(psChild.getAttributes());
-                        psJson.put("planserviceCostShares", costShare);
-                    }
-                }
-                services.add(psJson);
+        JsonNode costShares = subset.get("planCostShares");
+        if (costShares != null && !changedIndexIds.contains(costShares.path("objectId").asText())) {
+            subset.remove("planCostShares");
+        }
+
+        JsonNode services = subset.get("linkedPlanServices");
+        if (services != null && services.isArray()) {
+            ArrayNode changedServices = subset.arrayNode();
+            for (JsonNode service : services) {
+                if (changedIndexIds.contains(service.path("objectId").asText())) changedServices.add(service);
             }
+            subset.set("linkedPlanServices", changedServices);
         }
-        return objectMapper.writeValueAsString(planJson);
+        return subset;
     }
 
     /**
-     * Delete Plan and all related documents recursively
+     * Next plan version, derived from the version the change was read at. It is only committed if the Plan document
+     * still has that version (compare-and-set in writePlanChange), so the versions of a plan strictly increase in
+     * commit order and Elasticsearch, which indexes them as external versions, keeps the last committed write.
+     * At least the current time in ms, so versions are higher than the internal versions of documents indexed
+     * before versioning existed. A new plan starts above the deleted-version mark of its objectId, if any.
      */
-    private void deletePlanDocuments(String planId) {
-        List<PlanEntity> children = repository.findByParentId(planId); // Get all direct children
+    private static long nextVersion(Long current) {
+        return Math.max(current == null ? 1 : current + 1, System.currentTimeMillis());
+    }
 
-        // Delete children's children first (grandchildren)
-        for (PlanEntity child : children) {
-            if ("planservice".equals(child.getObjectType())) {
-                // Delete this PlanService's children (Service and CostShares)
-                repository.deleteByParentId(child.getId());
-            }
+    /**
+     * ETag of the stored documents (computed for a plan saved before ETags were stored)
+     */
+    private String storedETag(String planId, List<PlanEntity> documents, ObjectNode planJson) throws IOException {
+        for (PlanEntity document : documents) {
+            if (planId.equals(document.getId()) && document.getEtag() != null) return document.getEtag();
         }
+        return ETagGenerator.writeAndHash(objectMapper, planJson, etagAlgorithm).etag();
+    }
 
-        repository.deleteByParentId(planId); // Delete direct children
-        repository.deleteById(planId); // Delete Plan itself
-        log.debug("Deleted Plan and all related documents: {}", planId);
+    private Long storedVersion(String planId, List<PlanEntity> documents) {
+        for (PlanEntity document : documents) {
+            if (planId.equals(document.getId())) return document.getVersion();
+        }
+        return null;
+    }
+
+    private void validate(JsonNode planNode) {
+        Timer.Sample sample = metrics.start();
+        try {
+            validator.validate(planNode);
+        } finally {
+            metrics.stop(sample, PlanMetrics.VALIDATION);
+        }
     }
 
     /**
-     * For patch API, merge existing node with new nodes
+     * Save new plans and their INDEX messages (in one MongoDB transaction when the outbox is enabled)
+     * Returns the ids of plans that already existed: nothing of them is written or published
      */
-    private JsonNode deepMerge(JsonNode existing, JsonNode patch) {
-        if (!existing.isObject()) return patch;
+    private Set<String> insertDocuments(List<PlanEntity> documents, List<PlanQueueMessage> messages) {
+        Timer.Sample sample = metrics.start();
+        Set<String> skipped = repository.insertPlans(documents, outboxRecords(messages));
+        metrics.stop(sample, PlanMetrics.MONGO_WRITE);
+        publish(skipped.isEmpty() ? messages
+                : messages.stream().filter(m -> !skipped.contains(m.getObjectId())).toList());
+        return skipped;
+    }
 
-        ObjectNode merged = ((ObjectNode) existing).deepCopy();
+    /**
+     * Report already existing plans of an import batch as 409 and drop them from the candidates
+     */
+    private void rejectExisting(Set<String> existingIds, Map<String, Integer> candidates,
+                                PlanImportResult[] results, List<Integer> lines) {
+        for (String existingId : existingIds) {
+            int i = candidates.remove(existingId);
+            results[i] = PlanImportResult.failed(lines.get(i), existingId, 409,
+                    new ResourceAlreadyExistsException(existingId).getMessage());
+        }
+    }
 
-        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
-        while (fields.hasNext()) {
-            Map.Entry<String, JsonNode> entry = fields.next();
-            String fieldName = entry.getKey();
-            JsonNode patchValue = entry.getValue();
+    /**
+     * Write the changed documents of one plan and the queue messages describing the change, in one MongoDB
+     * transaction, only if the Plan document still has storedVersion. Returns false, nothing written, otherwise.
+     */
+    private boolean writeDocuments(String planId, Long storedVersion, List<PlanEntity> upserts,
+                                   Collection<String> deleteIds, List<PlanQueueMessage> messages) {
+        Timer.Sample sample = metrics.start();
+        boolean written = repository.writePlanChange(planId, storedVersion, upserts, deleteIds, outboxRecords(messages));
+        metrics.stop(sample, PlanMetrics.MONGO_WRITE);
+        if (written) publish(messages);
+        return written;
+    }
 
-            if (merged.has(fieldName)) {
-                JsonNode existingValue = merged.get(fieldName);
+    /**
+     * Outbox enabled: the messages are outbox records in the write's transaction, published by OutboxRelay,
+     * so a committed write always has its message. Disabled: none, the messages are published after the commit.
+     */
+    private List<OutboxRecord> outboxRecords(List<PlanQueueMessage> messages) {
+        return outboxEnabled ? messages.stream().map(OutboxRecord::of).toList() : List.of();
+    }
 
-                if (existingValue.isObject() && patchValue.isObject()) {
-                    merged.set(fieldName, deepMerge(existingValue, patchValue));
-                } else {
-                    merged.set(fieldName, patchValue);
+    private void publish(List<PlanQueueMessage> messages) {
+        if (messages.isEmpty()) return;
+        if (outboxEnabled) {
+            outboxRelay.wakeUp();
+        } else {
+            // Best effort: the write is already committed, a message the broker does not confirm is lost
+            queueService.publishAll(messages).thenAccept(confirmed -> {
+                if (!confirmed) {
+                    log.error("Queue messages not confirmed, Elasticsearch misses this write until a reindex: objectIds={}",
+                            messages.stream().map(PlanQueueMessage::getObjectId).toList());
                 }
-            } else {
-                merged.set(fieldName, patchValue);
+            });
+        }
+    }
+
+    private PlanQueueMessage indexMessage(PlanSnapshot plan) {
+        return PlanQueueMessage.index(plan.getObjectId(), plan.jsonText(), plan.getVersion());
+    }
+
+    private PreparedPlan preparePlan(JsonNode planNode, Long version) throws IOException {
+        String planId = planNode.get("objectId").asText();
+
+        Timer.Sample sample = metrics.start();
+        List<PlanEntity> entities = documentMapper.decompose(planNode);
+        ObjectNode planJson = documentMapper.assemble(planId, entities);
+        metrics.stop(sample, PlanMetrics.DECOMPOSITION);
+
+        // Serialized once to UTF-8, hashed while writing; the same bytes become the response body
+        sample = metrics.start();
+        ETagGenerator.Hashed hashed = ETagGenerator.writeAndHash(objectMapper, planJson, etagAlgorithm);
+        metrics.stop(sample, PlanMetrics.ETAG);
+        entities.get(0).setEtag(hashed.etag()); // Plan document is always first
+        entities.get(0).setVersion(version);
+
+        return new PreparedPlan(entities, new PlanSnapshot(planId, hashed.json(), hashed.etag(), version));
+    }
+
+    /**
+     * Reconstruct complete Plan JSON from decomposed MongoDB documents
+     * The whole plan tree is fetched with one query on rootPlanId, then assembled in memory
+     */
+    private PlanSnapshot reconstructPlan(String planId) throws Exception {
+        return storedSnapshot(planId, loadPlanDocuments(planId));
+    }
+
+    /**
+     * Plan JSON assembled from its stored documents, with the stored ETag and version
+     */
+    private PlanSnapshot storedSnapshot(String planId, List<PlanEntity> documents) throws IOException {
+        ObjectNode planJson = documentMapper.assemble(planId, documents);
+
+        PlanEntity planEntity = documents.stream()
+                .filter(document -> planId.equals(document.getId()))
+                .findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException(planId));
+        if (planEntity.getEtag() != null) {
+            return new PlanSnapshot(planId, objectMapper.writeValueAsBytes(planJson), planEntity.getEtag(), planEntity.getVersion());
+        }
+
+        // Plan saved before ETags were stored
+        ETagGenerator.Hashed hashed = ETagGenerator.writeAndHash(objectMapper, planJson, etagAlgorithm);
+        return new PlanSnapshot(planId, hashed.json(), hashed.etag(), planEntity.getVersion());
+    }
+
+    /**
+     * Assemble and write one batch of plans
+     */
+    private int writePlans(List<PlanEntity> planEntities, JsonGenerator generator) throws IOException {
+        for (ObjectNode planJson : assemblePlans(planEntities)) {
+            objectMapper.writeTree(generator, planJson);
+            generator.writeRaw('\n');
+        }
+        generator.flush(); // stream each batch to the client as soon as it is written
+        return planEntities.size();
+    }
+
+    private List<PlanEntity> loadPlanDocuments(String planId) {
+        List<PlanEntity> documents = repository.findByRootPlanId(planId);
+        if (documents.isEmpty()) {
+            documents = loadLegacyPlanDocuments(planId); // Documents saved before rootPlanId existed
+        }
+        return documents;
+    }
+
+    /**
+     * Load a plan tree saved without rootPlanId by walking parentId level by level
+     */
+    private List<PlanEntity> loadLegacyPlanDocuments(String planId) {
+        Optional<PlanEntity> planEntity = repository.findById(planId);
+        if (planEntity.isEmpty()) return List.of();
+
+        List<PlanEntity> documents = new ArrayList<>();
+        documents.add(planEntity.get());
+        for (PlanEntity child : repository.findByParentId(planId)) {
+            documents.add(child);
+            if ("planservice".equals(child.getObjectType())) {
+                documents.addAll(repository.findByParentId(child.getId()));
             }
         }
-        return merged;
+        return documents;
     }
 }
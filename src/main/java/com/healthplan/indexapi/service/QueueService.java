@@ -1,14 +1,29 @@
 package com.healthplan.indexapi.service;
 
 import com.healthplan.indexapi.model.PlanQueueMessage;
+import com.healthplan.indexapi.util.PlanMetrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Responsible for sending messages to RabbitMQ
+ * The queue of a message follows from its operation (INDEX, UPDATE, DELETE)
+ *
+ * Publishing never waits for the broker: each message is sent on a cached channel with a correlation,
+ * and its confirm completes a future. At most maxInFlight messages may be unconfirmed; beyond that the
+ * caller waits up to backpressureTimeout for confirms to catch up, then the publish fails.
  */
 @Slf4j
 @Service
@@ -16,6 +31,7 @@ import org.springframework.stereotype.Service;
 public class QueueService {
 
     private final RabbitTemplate rabbitTemplate;
+    private final PlanMetrics metrics;
 
     @Value("${queue.plan.index}")
     private String indexQueueName;
@@ -26,45 +42,124 @@ public class QueueService {
     @Value("${queue.plan.delete}")
     private String deleteQueueName;
 
+    @Value("${queue.publish.max-in-flight}")
+    private int maxInFlight = 1000;
+
+    @Value("${queue.publish.backpressure-timeout-ms}")
+    private long backpressureTimeoutMs;
+
+    @Value("${queue.publish.confirm-timeout-ms}")
+    private long confirmTimeoutMs;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void init() {
+        inFlight = new Semaphore(maxInFlight);
+    }
+
     /**
-     * Send INDEX message (for POST operations)
+     * Send one message; the future completes with true once the broker confirmed it,
+     * false if it was nacked, returned as unroutable, not confirmed in time or could not be sent
      */
-    public void sendIndexMessage(String objectId, String jsonData) {
-        PlanQueueMessage message = PlanQueueMessage.builder()
-                .operation("INDEX")
-                .objectId(objectId)
-                .jsonData(jsonData)
-                .build();
-
-        rabbitTemplate.convertAndSend(indexQueueName, message);
-        log.info("Sent INDEX message to queue: objectId={}", objectId);
+    public CompletableFuture<Boolean> publish(PlanQueueMessage message) {
+        try {
+            if (!inFlight.tryAcquire(backpressureTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Publisher backpressure: {} messages unconfirmed, {} message not sent: objectId={}",
+                        maxInFlight, message.getOperation(), message.getObjectId());
+                return completed(message, false, "rejected");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return completed(message, false, "rejected");
+        }
+
+        Timer.Sample sample = metrics.start();
+        CorrelationData correlation = new CorrelationData(message.getObjectId());
+        try {
+            rabbitTemplate.convertAndSend(queueFor(message), message, correlation);
+        } catch (AmqpException e) {
+            inFlight.release();
+            log.warn("Failed to send {} message: objectId={}, error={}",
+                    message.getOperation(), message.getObjectId(), e.getMessage());
+            return completed(message, false, "failed");
+        }
+        log.debug("Sent {} message to queue: objectId={}", message.getOperation(), message.getObjectId());
+
+        return correlation.getFuture()
+                .thenApply(confirm -> {
+                    if (!confirm.isAck()) {
+                        log.warn("{} message nacked by the broker: objectId={}, reason={}",
+                                message.getOperation(), message.getObjectId(), confirm.getReason());
+                        return false;
+                    }
+                    if (correlation.getReturned() != null) { // acked, but no queue took it
+                        log.warn("{} message returned as unroutable: objectId={}, reply={}",
+                                message.getOperation(), message.getObjectId(), correlation.getReturned().getReplyText());
+                        return false;
+                    }
+                    return true;
+                })
+                .orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    log.warn("{} message not confirmed within {} ms: objectId={}",
+                            message.getOperation(), confirmTimeoutMs, message.getObjectId());
+                    return false;
+                })
+                .whenComplete((ack, e) -> {
+                    inFlight.release();
+                    metrics.stop(sample, PlanMetrics.QUEUE_PUBLISH); // send to confirm
+                    String counter = ack ? "plan.queue.published" : "plan.queue.nacked";
+                    metrics.increment(counter, "operation", message.getOperation(), 1);
+                });
     }
 
     /**
-     * Send UPDATE message (for PATCH operations)
+     * Send many messages back to back without waiting in between (bulk import, outbox disabled)
      */
-    public void sendUpdateMessage(String objectId, String jsonData) {
-        PlanQueueMessage message = PlanQueueMessage.builder()
-                .operation("UPDATE")
-                .objectId(objectId)
-                .jsonData(jsonData)
-                .build();
-
-        rabbitTemplate.convertAndSend(updateQueueName, message);
-        log.info("Sent UPDATE message to queue: objectId={}", objectId);
+    public CompletableFuture<Boolean> publishAll(List<PlanQueueMessage> messages) {
+        List<CompletableFuture<Boolean>> confirms = messages.stream().map(this::publish).toList();
+        return CompletableFuture.allOf(confirms.toArray(CompletableFuture[]::new))
+                .thenApply(done -> confirms.stream().allMatch(CompletableFuture::join));
     }
 
     /**
-     * Send DELETE message (for DELETE operations)
+     * Send a batch and wait for its confirms (used by OutboxRelay)
+     * The confirms arrive while the batch is still being sent, so the batch costs about one broker round trip.
+     * Returns, per message, whether the broker confirmed it.
      */
-    public void sendDeleteMessage(String objectId) {
-        PlanQueueMessage message = PlanQueueMessage.builder()
-                .operation("DELETE")
-                .objectId(objectId)
-                .jsonData(null)  // No JSON data needed for DELETE
-                .build();
-
-        rabbitTemplate.convertAndSend(deleteQueueName, message);
-        log.info("Sent DELETE message to queue: objectId={}", objectId);
+    public boolean[] publishConfirmed(List<PlanQueueMessage> messages) {
+        List<CompletableFuture<Boolean>> confirms = messages.stream().map(this::publish).toList();
+
+        boolean[] confirmed = new boolean[messages.size()];
+        for (int i = 0; i < confirmed.length; i++) {
+            confirmed[i] = confirms.get(i).join(); // completes within confirmTimeout, never exceptionally
+        }
+        return confirmed;
+    }
+
+    /**
+     * Messages sent but not yet confirmed (plan.queue.in-flight)
+     */
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    private CompletableFuture<Boolean> completed(PlanQueueMessage message, boolean ack, String outcome) {
+        metrics.increment("plan.queue." + outcome, "operation", message.getOperation(), 1);
+        return CompletableFuture.completedFuture(ack);
+    }
+
+    private String queueFor(PlanQueueMessage message) {
+        return switch (message.getOperation()) {
+            case "INDEX" -> indexQueueName;
+            case "UPDATE" -> updateQueueName;
+            case "DELETE" -> deleteQueueName;
+            default -> throw new IllegalArgumentException("Unknown operation: " + message.getOperation());
+        };
     }
 }
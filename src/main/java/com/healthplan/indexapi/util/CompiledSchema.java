@@ -0,0 +1,216 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON Schema compiled into plain Java checks, used by JsonSchemaValidator as fast path
+ *
+ * Supports the keywords used by plan-schema.json: type, required, properties, items, enum.
+ * compile() rejects any other keyword so the caller can fall back to the generic validator.
+ * Accepts and rejects exactly like the fge validator (draft v4 semantics) for these keywords.
+ */
+public final class CompiledSchema {
+
+    // Keywords that carry no validation
+    private static final Set<String> ANNOTATIONS = Set.of("$schema", "title", "description", "$comment");
+
+    private final Check root;
+
+    private CompiledSchema(Check root) {
+        this.root = root;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the schema uses an unsupported keyword
+     */
+    public static CompiledSchema compile(JsonNode schemaNode) {
+        return new CompiledSchema(compileNode(schemaNode, ""));
+    }
+
+    /**
+     * Stops at the first violation, returns null if the instance is valid
+     */
+    public String firstError(JsonNode instance) {
+        Violation violation = root.check(instance);
+        return violation == null ? null : violation.toString();
+    }
+
+    // =========================================================================
+    // Compilation
+    // =========================================================================
+
+    private interface Check {
+        Violation check(JsonNode node);
+    }
+
+    private static Check compileNode(JsonNode schema, String schemaPath) {
+        if (!schema.isObject()) {
+            throw new IllegalArgumentException("Schema at '" + schemaPath + "' is not an object");
+        }
+
+        List<Check> checks = new ArrayList<>();
+        Iterator<String> keywords = schema.fieldNames();
+        while (keywords.hasNext()) {
+            String keyword = keywords.next();
+            JsonNode value = schema.get(keyword);
+            switch (keyword) {
+                case "type" -> checks.add(typeCheck(value));
+                case "enum" -> checks.add(enumCheck(value));
+                case "required" -> checks.add(requiredCheck(value));
+                case "properties" -> checks.add(propertiesCheck(value, schemaPath));
+                case "items" -> checks.add(itemsCheck(value, schemaPath));
+                default -> {
+                    if (!ANNOTATIONS.contains(keyword)) {
+                        throw new IllegalArgumentException("Unsupported keyword '" + keyword + "' at '" + schemaPath + "'");
+                    }
+                }
+            }
+        }
+
+        Check[] compiled = checks.toArray(new Check[0]);
+        return node -> {
+            for (Check check : compiled) {
+                Violation violation = check.check(node);
+                if (violation != null) return violation;
+            }
+            return null;
+        };
+    }
+
+    private static Check typeCheck(JsonNode value) {
+        Set<String> allowed = new HashSet<>();
+        if (value.isArray()) {
+            value.forEach(type -> allowed.add(type.asText()));
+        } else {
+            allowed.add(value.asText());
+        }
+        boolean allowInteger = allowed.contains("integer") || allowed.contains("number");
+
+        return node -> {
+            String actual = typeName(node);
+            if (allowed.contains(actual) || ("integer".equals(actual) && allowInteger)) return null;
+            return new Violation("instance type (" + actual + ") does not match any allowed primitive type " + allowed);
+        };
+    }
+
+    private static Check enumCheck(JsonNode value) {
+        List<JsonNode> allowed = new ArrayList<>();
+        value.forEach(allowed::add);
+
+        return node -> {
+            for (JsonNode candidate : allowed) {
+                if (jsonEquals(candidate, node)) return null;
+            }
+            return new Violation("instance value (" + node + ") not found in enum " + value);
+        };
+    }
+
+    private static Check requiredCheck(JsonNode value) {
+        List<String> required = new ArrayList<>();
+        value.forEach(name -> required.add(name.asText()));
+
+        return node -> {
+            if (!node.isObject()) return null; // required only applies to objects
+            for (String name : required) {
+                if (!node.has(name)) return new Violation("missing required property '" + name + "'");
+            }
+            return null;
+        };
+    }
+
+    private static Check propertiesCheck(JsonNode value, String schemaPath) {
+        Map<String, Check> properties = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonNode> property : value.properties()) {
+            properties.put(property.getKey(), compileNode(property.getValue(), schemaPath + "/properties/" + property.getKey()));
+        }
+
+        return node -> {
+            if (!node.isObject()) return null;
+            for (Map.Entry<String, Check> property : properties.entrySet()) {
+                JsonNode child = node.get(property.getKey());
+                if (child == null) continue;
+                Violation violation = property.getValue().check(child);
+                if (violation != null) return violation.under(property.getKey());
+            }
+            return null;
+        };
+    }
+
+    private static Check itemsCheck(JsonNode value, String schemaPath) {
+        if (!value.isObject()) {
+            throw new IllegalArgumentException("Tuple 'items' is not supported at '" + schemaPath + "'");
+        }
+        Check item = compileNode(value, schemaPath + "/items");
+
+        return node -> {
+            if (!node.isArray()) return null;
+            for (int i = 0; i < node.size(); i++) {
+                Violation violation = item.check(node.get(i));
+                if (violation != null) return violation.under(String.valueOf(i));
+            }
+            return null;
+        };
+    }
+
+    // =========================================================================
+    // Helpers
+    // =========================================================================
+
+    /**
+     * Primitive type name as JSON Schema sees it (integral numbers are "integer")
+     */
+    private static String typeName(JsonNode node) {
+        return switch (node.getNodeType()) {
+            case OBJECT -> "object";
+            case ARRAY -> "array";
+            case STRING -> "string";
+            case NUMBER -> node.isIntegralNumber() ? "integer" : "number";
+            case BOOLEAN -> "boolean";
+            case NULL -> "null";
+            default -> node.getNodeType().name().toLowerCase();
+        };
+    }
+
+    /**
+     * JSON equality where numbers compare by value (1 equals 1.0)
+     */
+    private static boolean jsonEquals(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) return a.decimalValue().compareTo(b.decimalValue()) == 0;
+        return a.equals(b);
+    }
+
+    /**
+     * First violation found, with the JSON pointer of the offending instance
+     * The pointer is only built on failure, so valid documents allocate nothing here
+     */
+    private static final class Violation {
+        private final String message;
+        private final List<String> reversedPath = new ArrayList<>();
+
+        Violation(String message) {
+            this.message = message;
+        }
+
+        Violation under(String token) {
+            reversedPath.add(token);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder pointer = new StringBuilder();
+            for (int i = reversedPath.size() - 1; i >= 0; i--) {
+                pointer.append('/').append(reversedPath.get(i).replace("~", "~0").replace("/", "~1"));
+            }
+            return "instance \"" + pointer + "\": " + message;
+        }
+    }
+}
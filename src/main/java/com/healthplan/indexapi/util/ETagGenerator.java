@@ -1,32 +1,132 @@
 package com.healthplan.indexapi.util;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.experimental.UtilityClass;
+import net.jpountz.xxhash.StreamingXXHash64;
+import net.jpountz.xxhash.XXHashFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * MD5 hash: JSON -> ETag
+ * Hash of the UTF-8 plan JSON -> ETag
+ * MD5 by default; XXHASH64 is a cheaper non-cryptographic alternative (plan.etag.algorithm)
+ * Digest instances are pooled (not thread-local, so they are also reused across virtual threads)
  */
 @UtilityClass
 public class ETagGenerator {
 
-    public static String generate(String content) {
+    public enum Algorithm { MD5, XXHASH64 }
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final XXHashFactory XXHASH = XXHashFactory.fastestInstance();
+
+    private static final Queue<MessageDigest> MD5_POOL = new ConcurrentLinkedQueue<>();
+    private static final Queue<StreamingXXHash64> XXHASH_POOL = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Serialized JSON together with its ETag
+     */
+    public record Hashed(byte[] json, String etag) {
+    }
+
+    public static String generate(byte[] content, Algorithm algorithm) {
+        HashingOutputStream out = new HashingOutputStream(algorithm, 0);
+        out.update(content, 0, content.length);
+        return out.etag();
+    }
+
+    /**
+     * Serialize value to UTF-8 JSON once, hashing the bytes as Jackson writes them
+     */
+    public static Hashed writeAndHash(ObjectMapper objectMapper, Object value, Algorithm algorithm) throws IOException {
+        HashingOutputStream out = new HashingOutputStream(algorithm, 4096);
+        objectMapper.writeValue(out, value);
+        return new Hashed(out.toByteArray(), out.etag());
+    }
+
+    /**
+     * Buffers written bytes and feeds them to a pooled digest; etag() returns the digest to the pool
+     */
+    private static class HashingOutputStream extends ByteArrayOutputStream {
+
+        private final MessageDigest md5;
+        private final StreamingXXHash64 xxHash;
+
+        HashingOutputStream(Algorithm algorithm, int size) {
+            super(size);
+            this.md5 = algorithm == Algorithm.MD5 ? borrowMd5() : null;
+            this.xxHash = algorithm == Algorithm.XXHASH64 ? borrowXxHash() : null;
+        }
+
+        @Override
+        public void write(int b) {
+            super.write(b);
+            update(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            super.write(b, off, len);
+            update(b, off, len);
+        }
+
+        void update(byte[] b, int off, int len) {
+            if (md5 != null) {
+                md5.update(b, off, len);
+            } else {
+                xxHash.update(b, off, len);
+            }
+        }
+
+        String etag() {
+            if (md5 != null) {
+                String etag = toHex(md5.digest()); // digest() also resets it
+                MD5_POOL.offer(md5);
+                return etag;
+            }
+            long hash = xxHash.getValue();
+            xxHash.reset();
+            XXHASH_POOL.offer(xxHash);
+            return toHex(hash);
+        }
+    }
+
+    private static MessageDigest borrowMd5() {
+        MessageDigest md = MD5_POOL.poll();
+        if (md != null) return md;
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hashBytes = md.digest(content.getBytes()); // cannot digest String so via byte[]
-            return bytesToHex(hashBytes);
+            return MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
             // Generally, MD5 always exists
             throw new RuntimeException("MD5 algorithm not found", e);
         }
     }
 
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+    private static StreamingXXHash64 borrowXxHash() {
+        StreamingXXHash64 hash = XXHASH_POOL.poll();
+        return hash != null ? hash : XXHASH.newStreamingHash64(0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static String toHex(long value) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
         }
-        return sb.toString();
+        return new String(chars);
     }
 }
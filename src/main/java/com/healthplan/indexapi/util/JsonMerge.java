@@ -0,0 +1,92 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.experimental.UtilityClass;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merge of a PATCH body into a stored plan tree
+ */
+@UtilityClass
+public class JsonMerge {
+
+    // Marks an array element for removal in a keyed PATCH merge
+    private static final String REMOVE_MARKER = "_remove";
+
+    /**
+     * For patch API, merge patch node into existing node
+     * existing is a freshly loaded tree, so it is modified in place instead of copied
+     */
+    public static JsonNode deepMerge(JsonNode existing, JsonNode patch, boolean keyedArrays) {
+        if (keyedArrays && existing.isArray() && patch.isArray()) return mergeByObjectId((ArrayNode) existing, patch);
+        if (!existing.isObject()) return patch;
+
+        ObjectNode merged = (ObjectNode) existing;
+
+        for (Map.Entry<String, JsonNode> entry : patch.properties()) {
+            String fieldName = entry.getKey();
+            JsonNode patchValue = entry.getValue();
+
+            if (merged.has(fieldName)) {
+                JsonNode existingValue = merged.get(fieldName);
+
+                if ((existingValue.isObject() && patchValue.isObject())
+                        || (keyedArrays && existingValue.isArray() && patchValue.isArray())) {
+                    merged.set(fieldName, deepMerge(existingValue, patchValue, keyedArrays));
+                } else {
+                    merged.set(fieldName, patchValue);
+                }
+            } else {
+                merged.set(fieldName, patchValue);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Keyed array merge: elements matched by objectId are merged, new ones appended,
+     * and elements marked with "_remove": true are removed (an element removed and then added again
+     * in the same patch replaces the stored one)
+     */
+    private static ArrayNode mergeByObjectId(ArrayNode existing, JsonNode patch) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < existing.size(); i++) {
+            positions.put(existing.get(i).path("objectId").asText(), i);
+        }
+
+        Set<String> removed = new HashSet<>();
+        for (JsonNode element : patch) {
+            if (!element.isObject() || !element.hasNonNull("objectId")) {
+                throw new IllegalArgumentException("Array elements must have an objectId to be merged by key");
+            }
+            String id = element.get("objectId").asText();
+            boolean remove = element.path(REMOVE_MARKER).asBoolean(false);
+            ((ObjectNode) element).remove(REMOVE_MARKER);
+
+            Integer position = positions.get(id);
+            if (remove) {
+                removed.add(id); // removing an element that doesn't exist is a no-op
+            } else if (removed.remove(id) && position != null) {
+                existing.set(position, element); // removed, then added back: replaced, not merged
+            } else if (position != null) {
+                existing.set(position, deepMerge(existing.get(position), element, true));
+            } else {
+                positions.put(id, existing.size());
+                existing.add(element);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            for (int i = existing.size() - 1; i >= 0; i--) {
+                if (removed.contains(existing.get(i).path("objectId").asText())) existing.remove(i);
+            }
+        }
+        return existing;
+    }
+}
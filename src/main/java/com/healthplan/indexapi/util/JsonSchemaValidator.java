@@ -1,41 +1,67 @@
 package com.healthplan.indexapi.util;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jackson.JsonLoader;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
 import com.github.fge.jsonschema.main.JsonSchema;
 import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 
 /**
  * JSON Schema Validator, injected to PlanService.java to validate data
+ *
+ * Default: schema compiled at startup (CompiledSchema), fails fast on the first error.
+ * validation.full-report=true: generic fge validator with the complete processing report (for debugging).
  */
+@Slf4j
 @Component
 public class JsonSchemaValidator {
 
     private final JsonSchema schema;
-    private final ObjectMapper objectMapper;
+    private final CompiledSchema compiledSchema; // null if the schema uses keywords CompiledSchema does not support
+    private final boolean fullReport;
 
-    public JsonSchemaValidator(ObjectMapper objectMapper) {
-        this.objectMapper = objectMapper;
+    public JsonSchemaValidator(@Value("${validation.full-report}") boolean fullReport) {
+        this.fullReport = fullReport;
 
         try {
             JsonNode schemaNode = JsonLoader.fromResource("/schemas/plan-schema.json"); // Use JsonLoader load plan-schema.json from resource
             JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
             this.schema = factory.getJsonSchema(schemaNode);
+            this.compiledSchema = compileOrNull(schemaNode);
 
         } catch (ProcessingException | IOException e) {
             throw new RuntimeException("Failed to load JSON schema", e);
         }
     }
 
-    public void validate(String jsonString) {
+    private static CompiledSchema compileOrNull(JsonNode schemaNode) {
+        try {
+            return CompiledSchema.compile(schemaNode);
+        } catch (IllegalArgumentException e) {
+            log.warn("Schema cannot be compiled, using generic validator only: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Validate an already parsed node
+     */
+    public void validate(JsonNode jsonNode) {
+        if (compiledSchema != null && !fullReport) {
+            String error = compiledSchema.firstError(jsonNode);
+            if (error != null) {
+                throw new IllegalArgumentException("JSON validation failed: " + error);
+            }
+            return;
+        }
+
         try {
-            JsonNode jsonNode = objectMapper.readTree(jsonString); // Json string -> node
             ProcessingReport report = schema.validate(jsonNode); // validate node by schema
 
             if (!report.isSuccess()) {
@@ -43,8 +69,6 @@ public class JsonSchemaValidator {
             }
         } catch (ProcessingException e) {
             throw new IllegalArgumentException("JSON validation error: " + e.getMessage());
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Invalid JSON format: " + e.getMessage());
         }
     }
 }
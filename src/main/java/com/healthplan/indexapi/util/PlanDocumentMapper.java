@@ -0,0 +1,193 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.healthplan.indexapi.exception.ResourceNotFoundException;
+import com.healthplan.indexapi.model.PlanEntity;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plan JSON <-> decomposed MongoDB documents, no database access
+ * Used by PlanService (and the benchmarks module)
+ */
+@Component
+@RequiredArgsConstructor
+public class PlanDocumentMapper {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Decompose Plan JSON into separate MongoDB documents (no database access)
+     */
+    public List<PlanEntity> decompose(JsonNode planNode) {
+        String planId = planNode.get("objectId").asText();
+        List<PlanEntity> entities = new ArrayList<>();
+
+        // 1. Main Plan document
+        Map<String, Object> planAttrs = new HashMap<>();
+        planAttrs.put("_org", planNode.get("_org").asText());
+        planAttrs.put("planType", planNode.get("planType").asText());
+        planAttrs.put("creationDate", planNode.get("creationDate").asText());
+
+        entities.add(PlanEntity.builder()
+                .id(planId)
+                .objectType("plan")
+                .parentId(null)
+                .rootPlanId(planId)
+                .attributes(planAttrs)
+                .build());
+
+        // 2. PlanCostShares
+        if (planNode.has("planCostShares")) {
+            JsonNode costShare = planNode.get("planCostShares");
+
+            Map<String, Object> attrs = new HashMap<>();
+            attrs.put("_org", costShare.get("_org").asText());
+            attrs.put("deductible", costShare.get("deductible").asInt());
+            attrs.put("copay", costShare.get("copay").asInt());
+
+            entities.add(PlanEntity.builder()
+                    .id(costShare.get("objectId").asText())
+                    .objectType("membercostshare")
+                    .parentId(planId)
+                    .rootPlanId(planId)
+                    .attributes(attrs)
+                    .build());
+        }
+
+        // 3. LinkedPlanServices and nested objects
+        if (planNode.has("linkedPlanServices")) {
+            JsonNode servicesArray = planNode.get("linkedPlanServices");
+            for (JsonNode ps : servicesArray) {
+                String psId = ps.get("objectId").asText();
+
+                // 3.1 LinkedPlanService
+                Map<String, Object> psAttrs = new HashMap<>();
+                psAttrs.put("_org", ps.get("_org").asText());
+
+                entities.add(PlanEntity.builder()
+                        .id(psId)
+                        .objectType("planservice")
+                        .parentId(planId)
+                        .rootPlanId(planId)
+                        .attributes(psAttrs)
+                        .build());
+
+                // 3.2 LinkedService
+                if (ps.has("linkedService")) {
+                    JsonNode service = ps.get("linkedService");
+
+                    Map<String, Object> sAttrs = new HashMap<>();
+                    sAttrs.put("_org", service.get("_org").asText());
+                    sAttrs.put("name", service.get("name").asText());
+
+                    entities.add(PlanEntity.builder()
+                            .id(service.get("objectId").asText())
+                            .objectType("service")
+                            .parentId(psId)
+                            .rootPlanId(planId)
+                            .attributes(sAttrs)
+                            .build());
+                }
+
+                // 3.3 PlanServiceCostShares
+                if (ps.has("planserviceCostShares")) {
+                    JsonNode psCostShare = ps.get("planserviceCostShares");
+
+                    Map<String, Object> pscsAttrs = new HashMap<>();
+                    pscsAttrs.put("_org", psCostShare.get("_org").asText());
+                    pscsAttrs.put("deductible", psCostShare.get("deductible").asInt());
+                    pscsAttrs.put("copay", psCostShare.get("copay").asInt());
+
+                    entities.add(PlanEntity.builder()
+                            .id(psCostShare.get("objectId").asText())
+                            .objectType("membercostshare")
+                            .parentId(psId)
+                            .rootPlanId(planId)
+                            .attributes(pscsAttrs)
+                            .build());
+                }
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Assemble Plan JSON tree from all documents of one plan tree (no database access)
+     */
+    public ObjectNode assemble(String planId, List<PlanEntity> documents) {
+        PlanEntity planEntity = null;
+        Map<String, List<PlanEntity>> childrenByParent = new HashMap<>();
+        for (PlanEntity document : documents) {
+            if (planId.equals(document.getId())) {
+                planEntity = document;
+            } else if (document.getParentId() != null) {
+                childrenByParent.computeIfAbsent(document.getParentId(), k -> new ArrayList<>()).add(document);
+            }
+        }
+        if (planEntity == null) throw new ResourceNotFoundException(planId);
+
+        // 1. Build Plan JSON
+        ObjectNode planJson = objectMapper.createObjectNode();
+        planJson.put("objectId", planId);
+        planJson.put("objectType", "plan");
+        putAttributes(planJson, planEntity.getAttributes());
+
+        // 2. Add PlanCostShares and LinkedPlanServices
+        for (PlanEntity child : childrenByParent.getOrDefault(planId, List.of())) {
+            if ("membercostshare".equals(child.getObjectType())) {
+                // This is PlanCostShares
+                planJson.set("planCostShares", toJson(child));
+
+            } else if ("planservice".equals(child.getObjectType())) {
+                // This is LinkedPlanService - attach its children
+                ArrayNode services = planJson.has("linkedPlanServices")
+                        ? (ArrayNode) planJson.get("linkedPlanServices")
+                        : planJson.putArray("linkedPlanServices");
+
+                ObjectNode psJson = toJson(child);
+                for (PlanEntity psChild : childrenByParent.getOrDefault(child.getId(), List.of())) {
+                    if ("service".equals(psChild.getObjectType())) {
+                        psJson.set("linkedService", toJson(psChild));
+                    } else if ("membercostshare".equals(psChild.getObjectType())) {
+                        psJson.set("planserviceCostShares", toJson(psChild));
+                    }
+                }
+                services.add(psJson);
+            }
+        }
+        return planJson;
+    }
+
+    private ObjectNode toJson(PlanEntity entity) {
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("objectId", entity.getId());
+        json.put("objectType", entity.getObjectType());
+        putAttributes(json, entity.getAttributes());
+        return json;
+    }
+
+    /**
+     * Copy stored attributes into a JSON node without going through a serialized string
+     */
+    private void putAttributes(ObjectNode json, Map<String, Object> attributes) {
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            Object value = attribute.getValue();
+            if (value instanceof String text) {
+                json.put(attribute.getKey(), text);
+            } else if (value instanceof Integer number) {
+                json.put(attribute.getKey(), number);
+            } else {
+                json.set(attribute.getKey(), objectMapper.valueToTree(value));
+            }
+        }
+    }
+}
@@ -1,12 +1,28 @@
 package com.healthplan.indexapi.util;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.healthplan.indexapi.model.PlanQueueMessage;
 import com.healthplan.indexapi.service.ElasticsearchIndexService;
+import com.rabbitmq.client.Channel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Plan Indexing Worker (connected to RabbitMQ Server)
  * Consume messages from RabbitMQ and index to Elasticsearch
@@ -17,17 +33,22 @@ import org.springframework.stereotype.Component;
 public class PlanIndexWorker {
 
     private final ElasticsearchIndexService indexService;
+    private final MessageConverter messageConverter;
+    private final PlanMetrics metrics;
+    private final ObjectMapper objectMapper;
 
     /**
      * @RabbitListener automatically connect to the queues on RabbitMQ Server
+     * Single-message listeners run unless queue.plan.batch.enabled=true
      */
 
-    @RabbitListener(queues = "${queue.plan.index}")
-    public void handleIndexMessage(PlanQueueMessage message) {
+    @RabbitListener(queues = "${queue.plan.index}", autoStartup = "#{!${queue.plan.batch.enabled}}")
+    public void handleIndexMessage(PlanQueueMessage message, Message amqpMessage) {
         log.info("Received INDEX message from queue: objectId={}", message.getObjectId());
+        metrics.recordQueueLag(amqpMessage.getMessageProperties());
 
         try {
-            indexService.indexPlan(message.getObjectId(), message.getJsonData());
+            indexService.indexPlan(message.getObjectId(), message.getJsonData(), null, message.getVersion());
             log.info("Successfully processed INDEX message: objectId={}", message.getObjectId());
 
         } catch (Exception e) {
@@ -39,12 +60,14 @@ public class PlanIndexWorker {
     }
 
 
-    @RabbitListener(queues = "${queue.plan.update}")
-    public void handleUpdateMessage(PlanQueueMessage message) {
+    @RabbitListener(queues = "${queue.plan.update}", autoStartup = "#{!${queue.plan.batch.enabled}}")
+    public void handleUpdateMessage(PlanQueueMessage message, Message amqpMessage) {
         log.info("Received UPDATE message from queue: objectId={}", message.getObjectId());
+        metrics.recordQueueLag(amqpMessage.getMessageProperties());
 
         try {
-            indexService.indexPlan(message.getObjectId(), message.getJsonData());
+            indexService.indexPlan(message.getObjectId(), message.getJsonData(),
+                    message.getRemovedObjectIds(), message.getVersion());
             log.info("Successfully processed UPDATE message: objectId={}", message.getObjectId());
 
         } catch (Exception e) {
@@ -55,12 +78,13 @@ public class PlanIndexWorker {
     }
 
 
-    @RabbitListener(queues = "${queue.plan.delete}")
-    public void handleDeleteMessage(PlanQueueMessage message) {
+    @RabbitListener(queues = "${queue.plan.delete}", autoStartup = "#{!${queue.plan.batch.enabled}}")
+    public void handleDeleteMessage(PlanQueueMessage message, Message amqpMessage) {
         log.info("Received DELETE message from queue: objectId={}", message.getObjectId());
+        metrics.recordQueueLag(amqpMessage.getMessageProperties());
 
         try {
-            indexService.deletePlan(message.getObjectId());
+            indexService.deletePlan(message.getObjectId(), message.getRemovedObjectIds(), message.getVersion());
             log.info("Successfully processed DELETE message: objectId={}", message.getObjectId());
 
         } catch (Exception e) {
@@ -69,4 +93,166 @@ public class PlanIndexWorker {
             throw e;
         }
     }
+
+
+    /**
+     * Batch mode: drains INDEX, UPDATE and DELETE messages together and applies each batch
+     * with one Elasticsearch _bulk request. Messages of the same plan are coalesced so only
+     * its newest state is indexed; every message is still acked or nacked on its own.
+     */
+    @RabbitListener(
+            id = "planBatchListener",
+            queues = {"${queue.plan.index}", "${queue.plan.update}", "${queue.plan.delete}"},
+            containerFactory = "batchListenerContainerFactory",
+            autoStartup = "${queue.plan.batch.enabled}"
+    )
+    public void handleBatch(List<Message> messages, Channel channel) throws IOException {
+        log.info("Received batch of {} messages from queues", messages.size());
+
+        List<Message> accepted = new ArrayList<>(messages.size());
+        List<PlanQueueMessage> decoded = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            metrics.recordQueueLag(message.getMessageProperties());
+            try {
+                decoded.add(decode(message));
+                accepted.add(message);
+            } catch (Exception e) {
+                // Cannot be processed on any retry: reject without requeue
+                log.error("Rejecting undecodable message: {}", e.getMessage());
+                channel.basicNack(message.getMessageProperties().getDeliveryTag(), false, false);
+            }
+        }
+
+        List<Coalesced> coalesced = coalesce(decoded);
+        if (coalesced.size() < decoded.size()) {
+            log.info("Coalesced {} messages into {}", decoded.size(), coalesced.size());
+        }
+        boolean[] succeeded = indexService.processBatch(coalesced.stream().map(Coalesced::message).toList());
+
+        for (int i = 0; i < coalesced.size(); i++) {
+            for (int source : coalesced.get(i).sources()) {
+                long deliveryTag = accepted.get(source).getMessageProperties().getDeliveryTag();
+                if (succeeded[i]) {
+                    channel.basicAck(deliveryTag, false);
+                } else {
+                    log.warn("Failed to process {} message, requeueing: objectId={}",
+                            decoded.get(source).getOperation(), decoded.get(source).getObjectId());
+                    channel.basicNack(deliveryTag, false, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Newest state of one plan and the positions of the messages it was built from
+     */
+    record Coalesced(PlanQueueMessage message, List<Integer> sources) {
+    }
+
+    /**
+     * Group messages by objectId and fold each group in version order:
+     * INDEX and DELETE replace the state, UPDATE is merged into it (changed children and removals accumulate);
+     * a DELETE also deletes the children removed by the UPDATEs it replaces.
+     * A DELETE followed by a newer INDEX or UPDATE (plan created again) is a boundary: both are kept, in version order
+     */
+    List<Coalesced> coalesce(List<PlanQueueMessage> messages) {
+        Map<String, List<Integer>> positionsByPlan = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            positionsByPlan.computeIfAbsent(messages.get(i).getObjectId(), k -> new ArrayList<>()).add(i);
+        }
+
+        List<Coalesced> coalesced = new ArrayList<>(positionsByPlan.size());
+        for (List<Integer> positions : positionsByPlan.values()) {
+            // Stable sort: messages without a version (published before versioning) keep their arrival order
+            positions.sort(Comparator.comparingLong(i -> versionOf(messages.get(i))));
+
+            PlanQueueMessage state = null;
+            List<Integer> sources = new ArrayList<>();
+            for (int position : positions) {
+                PlanQueueMessage next = messages.get(position);
+                PlanQueueMessage merged = state == null ? next : fold(state, next);
+                if (merged == null) { // cannot merge: flush what we have, start again from this message
+                    coalesced.add(new Coalesced(state, sources));
+                    sources = new ArrayList<>();
+                    merged = next;
+                }
+                state = merged;
+                sources.add(position);
+            }
+            coalesced.add(new Coalesced(state, sources));
+        }
+        return coalesced;
+    }
+
+    private PlanQueueMessage fold(PlanQueueMessage state, PlanQueueMessage next) {
+        if ("DELETE".equals(next.getOperation())) return deleteAfter(state, next);
+        if ("DELETE".equals(state.getOperation())) return null; // plan created again: the DELETE still has to remove the old children
+        if (!"UPDATE".equals(next.getOperation())) return next;
+
+        try {
+            ObjectNode plan = (ObjectNode) objectMapper.readTree(state.getJsonData());
+            JsonNode update = objectMapper.readTree(next.getJsonData());
+
+            // linkedPlanServices keyed by objectId, newer elements win
+            Map<String, JsonNode> services = new LinkedHashMap<>();
+            for (JsonNode service : plan.path("linkedPlanServices")) services.put(service.path("objectId").asText(), service);
+            for (JsonNode service : update.path("linkedPlanServices")) services.put(service.path("objectId").asText(), service);
+
+            // Plan fields and planCostShares: newer values win
+            for (Map.Entry<String, JsonNode> field : update.properties()) plan.set(field.getKey(), field.getValue());
+
+            Set<String> removed = new LinkedHashSet<>();
+            if (state.getRemovedObjectIds() != null) removed.addAll(state.getRemovedObjectIds());
+            if (next.getRemovedObjectIds() != null) {
+                for (String removedId : next.getRemovedObjectIds()) {
+                    removed.add(removedId);
+                    services.remove(removedId);
+                    if (removedId.equals(plan.path("planCostShares").path("objectId").asText())) plan.remove("planCostShares");
+                }
+            }
+            removed.removeAll(services.keySet()); // removed, then added back
+            removed.remove(plan.path("planCostShares").path("objectId").asText());
+
+            ArrayNode mergedServices = plan.putArray("linkedPlanServices");
+            services.values().forEach(mergedServices::add);
+
+            return PlanQueueMessage.builder()
+                    .operation(state.getOperation()) // INDEX + UPDATE is still a full INDEX
+                    .objectId(next.getObjectId())
+                    .jsonData(objectMapper.writeValueAsString(plan))
+                    .removedObjectIds(removed.isEmpty() ? null : new ArrayList<>(removed))
+                    .version(next.getVersion())
+                    .build();
+
+        } catch (Exception e) {
+            log.warn("Cannot coalesce messages: objectId={}, error={}", next.getObjectId(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Children removed by a replaced UPDATE are no longer in MongoDB, so the DELETE does not list them
+     */
+    private PlanQueueMessage deleteAfter(PlanQueueMessage state, PlanQueueMessage delete) {
+        // null child ids: the DELETE finds every child with a query
+        if (delete.getRemovedObjectIds() == null || state.getRemovedObjectIds() == null) return delete;
+
+        Set<String> childIds = new LinkedHashSet<>(delete.getRemovedObjectIds());
+        childIds.addAll(state.getRemovedObjectIds());
+        return PlanQueueMessage.builder()
+                .operation("DELETE")
+                .objectId(delete.getObjectId())
+                .removedObjectIds(new ArrayList<>(childIds))
+                .version(delete.getVersion())
+                .build();
+    }
+
+    private long versionOf(PlanQueueMessage message) {
+        return message.getVersion() != null ? message.getVersion() : -1;
+    }
+
+    private PlanQueueMessage decode(Message message) {
+        message.getMessageProperties().setInferredArgumentType(PlanQueueMessage.class);
+        return (PlanQueueMessage) messageConverter.fromMessage(message);
+    }
 }
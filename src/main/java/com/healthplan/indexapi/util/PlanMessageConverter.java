@@ -0,0 +1,146 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.healthplan.indexapi.model.PlanQueueMessage;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJackson2MessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.util.MimeType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * AMQP message converter for the plan queues: JSON, Smile or CBOR, optionally LZ4-compressed
+ *
+ * Outgoing messages use the configured format (content-type) and compression (content-encoding).
+ * Incoming messages are decoded by their own headers, so nodes publishing different formats
+ * (rolling upgrade, JSON messages still queued) share the same queues.
+ * JSON messages carry the plan as a string (the format every consumer reads); Smile and CBOR,
+ * which only new consumers read anyway, embed it as a structure instead of a string.
+ * Only classes of the model package can be named by the __TypeId__ header.
+ */
+public class PlanMessageConverter implements MessageConverter {
+
+    public enum Format { JSON, SMILE, CBOR }
+
+    public enum Compression { NONE, LZ4 }
+
+    // Content-encoding "x-lz4-block:<charset>": one LZ4 block prefixed with the uncompressed length (4 bytes),
+    // not the LZ4 frame format of Spring AMQP's "lz4" post processors
+    private static final String LZ4_ENCODING = "x-lz4-block";
+    private static final String TRUSTED_PACKAGE = "com.healthplan.indexapi.model";
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final Map<Format, MessageConverter> converters = new EnumMap<>(Format.class);
+    private final Format format;
+    private final Compression compression;
+    private final int compressionThreshold;
+    private final int maxMessageBytes;
+
+    /**
+     * maxMessageBytes: largest uncompressed body accepted, a larger length prefix is rejected before allocating
+     */
+    public PlanMessageConverter(Format format, Compression compression, int compressionThreshold, int maxMessageBytes) {
+        this.format = format;
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+        this.maxMessageBytes = maxMessageBytes;
+
+        converters.put(Format.JSON, new Jackson2JsonMessageConverter(TRUSTED_PACKAGE));
+        converters.put(Format.SMILE, binary(new SmileFactory(), "application/x-jackson-smile"));
+        converters.put(Format.CBOR, binary(new CBORFactory(), "application/cbor"));
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties properties) {
+        Message message = converters.get(format).toMessage(object, properties);
+        if (format != Format.JSON) properties.setContentEncoding(null); // binary, no charset
+
+        if (compression == Compression.NONE || message.getBody().length < compressionThreshold) return message;
+
+        String charset = properties.getContentEncoding();
+        properties.setContentEncoding(charset == null ? LZ4_ENCODING : LZ4_ENCODING + ":" + charset);
+        return new Message(compress(message.getBody()), properties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        String encoding = properties.getContentEncoding();
+        if (encoding != null && (encoding.equals(LZ4_ENCODING) || encoding.startsWith(LZ4_ENCODING + ":"))) {
+            int delimiter = encoding.indexOf(':');
+            properties.setContentEncoding(delimiter < 0 ? null : encoding.substring(delimiter + 1));
+            message = new Message(decompress(message.getBody()), properties);
+        }
+
+        Format messageFormat = formatOf(properties.getContentType());
+        if (messageFormat != Format.JSON) properties.setContentEncoding(null); // Jackson then reads the bytes, not a String
+        return converters.get(messageFormat).fromMessage(message);
+    }
+
+    // =========================================================================
+    // Helper methods for the public methods
+    // =========================================================================
+
+    private Format formatOf(String contentType) {
+        if (contentType != null) {
+            if (contentType.contains("smile")) return Format.SMILE;
+            if (contentType.contains("cbor")) return Format.CBOR;
+        }
+        return Format.JSON; // application/json, and messages without content-type
+    }
+
+    private static MessageConverter binary(JsonFactory factory, String contentType) {
+        ObjectMapper objectMapper = new ObjectMapper(factory)
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false) // as Jackson2JsonMessageConverter
+                .addMixIn(PlanQueueMessage.class, EmbeddedJsonData.class);
+        return new AbstractJackson2MessageConverter(objectMapper, MimeType.valueOf(contentType), TRUSTED_PACKAGE) {
+        };
+    }
+
+    /**
+     * Binary formats: jsonData is transcoded into the format instead of written as a string
+     */
+    private abstract static class EmbeddedJsonData {
+        @JsonSerialize(using = RawJsonSerializer.class)
+        abstract String getJsonData();
+    }
+
+    /**
+     * LZ4 block prefixed with the uncompressed length
+     */
+    private static byte[] compress(byte[] body) {
+        LZ4Compressor compressor = LZ4.fastCompressor();
+        byte[] compressed = new byte[Integer.BYTES + compressor.maxCompressedLength(body.length)];
+        ByteBuffer.wrap(compressed).putInt(body.length);
+        int length = compressor.compress(body, 0, body.length, compressed, Integer.BYTES, compressed.length - Integer.BYTES);
+        return Arrays.copyOf(compressed, Integer.BYTES + length);
+    }
+
+    private byte[] decompress(byte[] body) {
+        if (body.length < Integer.BYTES) throw new MessageConversionException("LZ4 message body too short");
+        int length = ByteBuffer.wrap(body).getInt();
+        if (length < 0 || length > maxMessageBytes) {
+            throw new MessageConversionException("LZ4 message body of " + length + " bytes exceeds " + maxMessageBytes);
+        }
+
+        try {
+            return LZ4.fastDecompressor().decompress(body, Integer.BYTES, length);
+        } catch (RuntimeException e) {
+            throw new MessageConversionException("Failed to decompress LZ4 message body", e);
+        }
+    }
+}
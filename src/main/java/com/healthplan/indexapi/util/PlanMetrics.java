@@ -0,0 +1,69 @@
+package com.healthplan.indexapi.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Micrometer meters for the plan write/read path (exposed on /actuator/prometheus)
+ * plan.stage: duration of each stage, tagged with stage
+ * plan.queue.lag: time from publish to consume, tagged with queue
+ */
+@Component
+@RequiredArgsConstructor
+public class PlanMetrics {
+
+    public static final String VALIDATION = "validation";
+    public static final String DECOMPOSITION = "mongo.decomposition";
+    public static final String RECONSTRUCTION = "mongo.reconstruction";
+    public static final String MONGO_WRITE = "mongo.write";
+    public static final String ETAG = "etag";
+    public static final String QUEUE_PUBLISH = "queue.publish";
+    public static final String ES_INDEX = "es.index";
+    public static final String ES_DELETE = "es.delete";
+
+    private final MeterRegistry registry;
+
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> lagTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stop(Timer.Sample sample, String stage) {
+        sample.stop(stageTimers.computeIfAbsent(stage, s -> Timer.builder("plan.stage")
+                .description("Duration of one stage of the plan write/read path")
+                .tag("stage", s)
+                .register(registry)));
+    }
+
+    /**
+     * Consumer lag from the timestamp set by the publisher (skipped for messages without one)
+     */
+    public void recordQueueLag(MessageProperties properties) {
+        if (properties.getTimestamp() == null || properties.getConsumerQueue() == null) return;
+
+        long lagMs = System.currentTimeMillis() - properties.getTimestamp().getTime();
+        lagTimers.computeIfAbsent(properties.getConsumerQueue(), q -> Timer.builder("plan.queue.lag")
+                        .description("Time a message waited in the queue before being consumed")
+                        .tag("queue", q)
+                        .register(registry))
+                .record(Duration.ofMillis(Math.max(lagMs, 0)));
+    }
+
+    public void increment(String name, String tagKey, String tagValue, int amount) {
+        counters.computeIfAbsent(name + ":" + tagValue, k -> Counter.builder(name)
+                        .tag(tagKey, tagValue)
+                        .register(registry))
+                .increment(amount);
+    }
+}
@@ -0,0 +1,21 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads a value written by RawJsonSerializer (raw JSON, or transcoded to Smile / CBOR) back into a JSON string
+ * Values written as a string (JSON messages published before) are read unchanged
+ */
+public class RawJsonDeserializer extends JsonDeserializer<String> {
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) return parser.getText();
+        return parser.readValueAsTree().toString();
+    }
+}
@@ -0,0 +1,31 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.StreamWriteCapability;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Writes a JSON string as-is into a JSON document instead of as an escaped string
+ * Binary formats (Smile, CBOR) cannot embed raw JSON: the value is transcoded into the format instead
+ */
+public class RawJsonSerializer extends JsonSerializer<String> {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Override
+    public void serialize(String json, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        if (generator.getWriteCapabilities().isEnabled(StreamWriteCapability.CAN_WRITE_BINARY_NATIVELY)) {
+            try (JsonParser parser = JSON.createParser(json)) { // streamed token by token into the binary format
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        } else {
+            generator.writeRawValue(json);
+        }
+    }
+}
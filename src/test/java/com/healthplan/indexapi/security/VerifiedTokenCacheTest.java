@@ -0,0 +1,72 @@
+package com.healthplan.indexapi.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verified tokens are answered until their exp claim, and the cache never grows past max-entries
+ */
+class VerifiedTokenCacheTest {
+
+    private static final int MAX_ENTRIES = 10;
+
+    private VerifiedTokenCache cache;
+
+    @BeforeEach
+    void createCache() {
+        cache = new VerifiedTokenCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", MAX_ENTRIES);
+    }
+
+    @Test
+    void answersVerifiedTokensUntilTheyExpire() {
+        assertFalse(cache.isVerified("token-a"));
+
+        cache.put("token-a", inSeconds(60));
+        assertTrue(cache.isVerified("token-a"));
+        assertFalse(cache.isVerified("token-b"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void dropsExpiredTokenOnLookup() {
+        cache.put("token-a", inSeconds(-1));
+
+        assertFalse(cache.isVerified("token-a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsExpiredTokensFirstWhenFull() {
+        for (int i = 0; i < MAX_ENTRIES / 2; i++) cache.put("expired-" + i, inSeconds(-1));
+        for (int i = 0; i < MAX_ENTRIES / 2; i++) cache.put("valid-" + i, inSeconds(60));
+
+        cache.put("new", inSeconds(60));
+
+        assertEquals(MAX_ENTRIES / 2 + 1, cache.size());
+        for (int i = 0; i < MAX_ENTRIES / 2; i++) assertTrue(cache.isVerified("valid-" + i));
+        assertTrue(cache.isVerified("new"));
+    }
+
+    @Test
+    void staysWithinCapacity() {
+        for (int i = 0; i < MAX_ENTRIES * 5; i++) {
+            cache.put("token-" + i, inSeconds(60));
+            assertTrue(cache.size() <= MAX_ENTRIES);
+        }
+        assertTrue(cache.isVerified("token-" + (MAX_ENTRIES * 5 - 1))); // the newest token is always kept
+    }
+
+    private static Date inSeconds(long seconds) {
+        return new Date(System.currentTimeMillis() + seconds * 1000);
+    }
+}
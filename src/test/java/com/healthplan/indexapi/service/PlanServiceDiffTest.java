@@ -0,0 +1,179 @@
+package com.healthplan.indexapi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.healthplan.indexapi.model.PlanEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Incremental PATCH: which MongoDB documents are written or deleted, and which Elasticsearch documents change
+ */
+class PlanServiceDiffTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String PLAN_ID = "plan-001";
+
+    @Test
+    void unchangedPlanWritesNothing() {
+        PlanService.PlanDiff diff = PlanService.diffPlan(PLAN_ID, documents(), documents());
+
+        assertTrue(diff.upserts().isEmpty());
+        assertTrue(diff.deleteIds().isEmpty());
+        assertTrue(diff.changedIndexIds().isEmpty());
+        assertTrue(diff.removedIndexIds().isEmpty());
+    }
+
+    @Test
+    void planFieldChangeWritesOnlyThePlanDocument() {
+        List<PlanEntity> patched = documents();
+        find(patched, PLAN_ID).getAttributes().put("planType", "outOfNetwork");
+
+        PlanService.PlanDiff diff = PlanService.diffPlan(PLAN_ID, documents(), patched);
+
+        assertEquals(List.of(PLAN_ID), ids(diff.upserts()));
+        assertTrue(diff.deleteIds().isEmpty());
+        assertTrue(diff.changedIndexIds().isEmpty()); // the Plan document is always re-indexed
+    }
+
+    @Test
+    void nestedChangeMarksItsLinkedPlanService() {
+        List<PlanEntity> patched = documents();
+        find(patched, "pscostshare-002").getAttributes().put("copay", 50);
+
+        PlanService.PlanDiff diff = PlanService.diffPlan(PLAN_ID, documents(), patched);
+
+        assertEquals(List.of("pscostshare-002"), ids(diff.upserts()));
+        assertEquals(Set.of("planservice-002"), diff.changedIndexIds());
+        assertTrue(diff.removedIndexIds().isEmpty());
+    }
+
+    @Test
+    void removedLinkedPlanServiceDeletesItsTree() {
+        List<PlanEntity> patched = documents();
+        patched.removeIf(entity -> entity.getId().endsWith("-001") && !entity.getId().equals(PLAN_ID)
+                && !entity.getId().equals("costshare-001"));
+
+        PlanService.PlanDiff diff = PlanService.diffPlan(PLAN_ID, documents(), patched);
+
+        assertTrue(diff.upserts().isEmpty());
+        assertEquals(Set.of("planservice-001", "service-001", "pscostshare-001"), Set.copyOf(diff.deleteIds()));
+        assertEquals(List.of("planservice-001"), diff.removedIndexIds());
+        assertTrue(diff.changedIndexIds().isEmpty());
+    }
+
+    @Test
+    void replacedChildOfKeptServiceChangesTheService() {
+        List<PlanEntity> patched = documents();
+        find(patched, "service-001").setId("service-009");
+
+        PlanService.PlanDiff diff = PlanService.diffPlan(PLAN_ID, documents(), patched);
+
+        assertEquals(List.of("service-009"), ids(diff.upserts()));
+        assertEquals(List.of("service-001"), diff.deleteIds());
+        assertEquals(Set.of("planservice-001"), diff.changedIndexIds());
+        assertTrue(diff.removedIndexIds().isEmpty());
+    }
+
+    @Test
+    void addedLinkedPlanServiceIsChanged() {
+        List<PlanEntity> patched = documents();
+        addService(patched, "003", 0);
+
+        PlanService.PlanDiff diff = PlanService.diffPlan(PLAN_ID, documents(), patched);
+
+        assertEquals(Set.of("planservice-003", "service-003", "pscostshare-003"), Set.copyOf(ids(diff.upserts())));
+        assertEquals(Set.of("planservice-003"), diff.changedIndexIds());
+    }
+
+    @Test
+    void changedSubsetKeepsPlanFieldsAndOnlyChangedChildren() throws Exception {
+        ObjectNode subset = PlanService.changedSubset(planJson(), Set.of("planservice-002"));
+
+        assertEquals(PLAN_ID, subset.get("objectId").asText());
+        assertEquals("inNetwork", subset.get("planType").asText());
+        assertFalse(subset.has("planCostShares"));
+        assertEquals(1, subset.get("linkedPlanServices").size());
+        assertEquals("planservice-002", subset.get("linkedPlanServices").get(0).get("objectId").asText());
+    }
+
+    @Test
+    void changedSubsetKeepsChangedCostSharesAndEmptiesUnchangedServices() throws Exception {
+        ObjectNode plan = planJson();
+        ObjectNode subset = PlanService.changedSubset(plan, Set.of("costshare-001"));
+
+        assertEquals(plan.get("planCostShares"), subset.get("planCostShares"));
+        assertEquals(0, subset.get("linkedPlanServices").size()); // present and empty: no service changed
+        assertEquals(2, plan.get("linkedPlanServices").size()); // input left as it was
+    }
+
+    /**
+     * Stored documents of a plan with a cost share and two linked plan services
+     */
+    private List<PlanEntity> documents() {
+        List<PlanEntity> documents = new ArrayList<>();
+        documents.add(document(PLAN_ID, "plan", null, Map.of("_org", "example.com", "planType", "inNetwork",
+                "creationDate", "2025-12-06")));
+        documents.add(document("costshare-001", "membercostshare", PLAN_ID, Map.of("_org", "example.com",
+                "deductible", 2000, "copay", 23)));
+        addService(documents, "001", 0);
+        addService(documents, "002", 175);
+        return documents;
+    }
+
+    private void addService(List<PlanEntity> documents, String suffix, int copay) {
+        String serviceId = "planservice-" + suffix;
+        documents.add(document(serviceId, "planservice", PLAN_ID, Map.of("_org", "example.com")));
+        documents.add(document("service-" + suffix, "service", serviceId, Map.of("_org", "example.com",
+                "name", "Service " + suffix)));
+        documents.add(document("pscostshare-" + suffix, "membercostshare", serviceId, Map.of("_org", "example.com",
+                "deductible", 10, "copay", copay)));
+    }
+
+    private PlanEntity document(String id, String objectType, String parentId, Map<String, Object> attributes) {
+        return PlanEntity.builder()
+                .id(id)
+                .objectType(objectType)
+                .parentId(parentId)
+                .rootPlanId(PLAN_ID)
+                .attributes(new HashMap<>(attributes))
+                .build();
+    }
+
+    private PlanEntity find(List<PlanEntity> documents, String id) {
+        return documents.stream().filter(entity -> id.equals(entity.getId())).findFirst().orElseThrow();
+    }
+
+    private List<String> ids(List<PlanEntity> entities) {
+        return entities.stream().map(PlanEntity::getId).toList();
+    }
+
+    private ObjectNode planJson() throws Exception {
+        return (ObjectNode) MAPPER.readTree("""
+                {
+                  "planCostShares": {
+                    "deductible": 2000, "_org": "example.com", "copay": 23,
+                    "objectId": "costshare-001", "objectType": "membercostshare"
+                  },
+                  "linkedPlanServices": [
+                    {"_org": "example.com", "objectId": "planservice-001", "objectType": "planservice"},
+                    {"_org": "example.com", "objectId": "planservice-002", "objectType": "planservice"}
+                  ],
+                  "_org": "example.com",
+                  "objectId": "plan-001",
+                  "objectType": "plan",
+                  "planType": "inNetwork",
+                  "creationDate": "2025-12-06"
+                }
+                """);
+    }
+}
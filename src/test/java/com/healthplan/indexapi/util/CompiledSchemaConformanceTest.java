@@ -0,0 +1,158 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CompiledSchema must accept and reject exactly the same documents as the generic fge validator
+ * Every document is a mutation of a valid plan: each field removed, replaced by values of every
+ * JSON type, plus whole-array and element-level changes.
+ */
+class CompiledSchemaConformanceTest {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static JsonSchema fgeSchema;
+    private static CompiledSchema compiledSchema;
+
+    @BeforeAll
+    static void loadSchema() throws Exception {
+        JsonNode schemaNode = JsonLoader.fromResource("/schemas/plan-schema.json");
+        fgeSchema = JsonSchemaFactory.byDefault().getJsonSchema(schemaNode);
+        compiledSchema = CompiledSchema.compile(schemaNode);
+    }
+
+    @Test
+    void acceptsValidPlan() throws Exception {
+        JsonNode plan = validPlan();
+        assertTrue(fgeSchema.validate(plan).isSuccess());
+        assertNull(compiledSchema.firstError(plan));
+    }
+
+    @Test
+    void agreesWithGenericValidatorOnEveryMutation() throws Exception {
+        List<JsonNode> corpus = new ArrayList<>();
+        JsonNode plan = validPlan();
+        mutate(plan, plan, corpus);
+        corpus.add(NODES.arrayNode());
+        corpus.add(NODES.textNode("plan"));
+        corpus.add(NODES.nullNode());
+        corpus.add(NODES.objectNode());
+
+        int rejected = 0;
+        for (JsonNode document : corpus) {
+            boolean expected = fgeSchema.validate(document).isSuccess();
+            String error = compiledSchema.firstError(document);
+            assertEquals(expected, error == null, () -> "Disagreement on " + document + " (compiled: " + error + ")");
+            if (!expected) rejected++;
+        }
+        assertTrue(rejected > 100, "corpus should exercise the reject path, got " + rejected);
+    }
+
+    /**
+     * Walk every field of node (a subtree of root), adding one mutated copy of root per change
+     */
+    private void mutate(JsonNode root, JsonNode node, List<JsonNode> corpus) {
+        if (node.isObject()) {
+            ObjectNode object = (ObjectNode) node;
+            List<String> names = new ArrayList<>();
+            object.fieldNames().forEachRemaining(names::add);
+
+            for (String name : names) {
+                JsonNode original = object.get(name);
+
+                object.remove(name);
+                corpus.add(root.deepCopy());
+                for (JsonNode replacement : replacements()) {
+                    object.set(name, replacement);
+                    corpus.add(root.deepCopy());
+                }
+                object.set(name, original);
+
+                mutate(root, original, corpus);
+            }
+            object.put("unknownProperty", "allowed");
+            corpus.add(root.deepCopy());
+            object.remove("unknownProperty");
+
+        } else if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0; i < array.size(); i++) {
+                JsonNode original = array.get(i);
+                for (JsonNode replacement : replacements()) {
+                    array.set(i, replacement);
+                    corpus.add(root.deepCopy());
+                }
+                array.set(i, original);
+                mutate(root, original, corpus);
+            }
+            array.add(array.get(0).deepCopy()); // duplicate element
+            corpus.add(root.deepCopy());
+            array.remove(array.size() - 1);
+        }
+    }
+
+    private List<JsonNode> replacements() {
+        List<JsonNode> values = new ArrayList<>();
+        values.add(NODES.nullNode());
+        values.add(NODES.booleanNode(true));
+        values.add(NODES.numberNode(7));
+        values.add(NODES.numberNode(7L));
+        values.add(NODES.numberNode(7.0));
+        values.add(NODES.numberNode(7.5));
+        values.add(NODES.numberNode(new java.math.BigInteger("123456789012345678901234567890")));
+        values.add(NODES.textNode(""));
+        values.add(NODES.textNode("plan"));
+        values.add(NODES.textNode("membercostshare"));
+        values.add(NODES.textNode("planservice"));
+        values.add(NODES.textNode("service"));
+        values.add(NODES.arrayNode());
+        values.add(NODES.objectNode());
+        return values;
+    }
+
+    private JsonNode validPlan() throws Exception {
+        return MAPPER.readTree("""
+                {
+                  "planCostShares": {
+                    "deductible": 2000, "_org": "example.com", "copay": 23,
+                    "objectId": "costshare-001", "objectType": "membercostshare"
+                  },
+                  "linkedPlanServices": [
+                    {
+                      "linkedService": {
+                        "_org": "example.com", "objectId": "service-001", "objectType": "service", "name": "Yearly physical"
+                      },
+                      "planserviceCostShares": {
+                        "deductible": 10, "_org": "example.com", "copay": 0,
+                        "objectId": "pscostshare-001", "objectType": "membercostshare"
+                      },
+                      "_org": "example.com", "objectId": "planservice-001", "objectType": "planservice"
+                    }
+                  ],
+                  "_org": "example.com",
+                  "objectId": "plan-001",
+                  "objectType": "plan",
+                  "planType": "inNetwork",
+                  "creationDate": "2025-12-06"
+                }
+                """);
+    }
+}
@@ -0,0 +1,81 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * PATCH merge: objects merged recursively, arrays replaced or merged by objectId
+ */
+class JsonMergeTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void mergesObjectsAndReplacesScalars() throws Exception {
+        JsonNode merged = JsonMerge.deepMerge(
+                json("{'planType': 'inNetwork', 'planCostShares': {'objectId': 'c1', 'copay': 10, 'deductible': 100}}"),
+                json("{'planType': 'outOfNetwork', 'planCostShares': {'copay': 20}, '_org': 'example.com'}"),
+                false);
+
+        assertEquals(json("{'planType': 'outOfNetwork', 'planCostShares': {'objectId': 'c1', 'copay': 20, 'deductible': 100},"
+                + " '_org': 'example.com'}"), merged);
+    }
+
+    @Test
+    void replacesArraysWithoutKeyedMerge() throws Exception {
+        JsonNode merged = JsonMerge.deepMerge(
+                json("{'services': [{'objectId': 's1', 'name': 'a'}, {'objectId': 's2', 'name': 'b'}]}"),
+                json("{'services': [{'objectId': 's2', 'name': 'c'}]}"),
+                false);
+
+        assertEquals(json("{'services': [{'objectId': 's2', 'name': 'c'}]}"), merged);
+    }
+
+    @Test
+    void keyedMergeUpdatesAppendsAndRemoves() throws Exception {
+        JsonNode merged = JsonMerge.deepMerge(
+                json("{'services': [{'objectId': 's1', 'cost': {'copay': 1, 'deductible': 2}}, {'objectId': 's2'}, {'objectId': 's3'}]}"),
+                json("{'services': [{'objectId': 's1', 'cost': {'copay': 5}}, {'objectId': 's2', '_remove': true},"
+                        + " {'objectId': 's4'}, {'objectId': 'missing', '_remove': true}]}"),
+                true);
+
+        assertEquals(json("{'services': [{'objectId': 's1', 'cost': {'copay': 5, 'deductible': 2}}, {'objectId': 's3'},"
+                + " {'objectId': 's4'}]}"), merged);
+    }
+
+    @Test
+    void keyedMergeReplacesElementRemovedAndAddedBack() throws Exception {
+        JsonNode merged = JsonMerge.deepMerge(
+                json("{'services': [{'objectId': 's1', 'name': 'old', 'note': 'stored'}, {'objectId': 's2'}]}"),
+                json("{'services': [{'objectId': 's1', '_remove': true}, {'objectId': 's1', 'name': 'new'}]}"),
+                true);
+
+        assertEquals(json("{'services': [{'objectId': 's1', 'name': 'new'}, {'objectId': 's2'}]}"), merged);
+    }
+
+    @Test
+    void keyedMergeDropsElementAddedThenRemoved() throws Exception {
+        JsonNode merged = JsonMerge.deepMerge(
+                json("{'services': [{'objectId': 's1'}]}"),
+                json("{'services': [{'objectId': 's2'}, {'objectId': 's2', '_remove': true}]}"),
+                true);
+
+        assertEquals(json("{'services': [{'objectId': 's1'}]}"), merged);
+    }
+
+    @Test
+    void keyedMergeRequiresObjectIds() throws Exception {
+        JsonNode existing = json("{'services': [{'objectId': 's1'}]}");
+        JsonNode patch = json("{'services': [{'name': 'no id'}]}");
+
+        assertThrows(IllegalArgumentException.class, () -> JsonMerge.deepMerge(existing, patch, true));
+    }
+
+    private static JsonNode json(String singleQuoted) throws Exception {
+        return MAPPER.readTree(singleQuoted.replace('\'', '"'));
+    }
+}
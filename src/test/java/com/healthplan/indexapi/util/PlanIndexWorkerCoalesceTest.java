@@ -0,0 +1,142 @@
+package com.healthplan.indexapi.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthplan.indexapi.model.PlanQueueMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Batch mode: messages of the same plan folded into its newest state, in version order
+ */
+class PlanIndexWorkerCoalesceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final PlanIndexWorker worker = new PlanIndexWorker(null, null, null, MAPPER);
+
+    @Test
+    void foldsUpdatesIntoIndexInVersionOrder() throws Exception {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("UPDATE", "p1", plan("inNetwork", "s1:30"), null, 3L),
+                message("INDEX", "p1", plan("inNetwork", "s1:10", "s2:10"), null, 1L),
+                message("UPDATE", "p1", plan("outOfNetwork", "s1:20"), null, 2L)));
+
+        assertEquals(1, coalesced.size());
+        PlanQueueMessage message = coalesced.get(0).message();
+        assertEquals("INDEX", message.getOperation());
+        assertEquals(3L, message.getVersion());
+        assertEquals(MAPPER.readTree(plan("inNetwork", "s1:30", "s2:10")), MAPPER.readTree(message.getJsonData()));
+        assertEquals(Set.of(0, 1, 2), Set.copyOf(coalesced.get(0).sources()));
+    }
+
+    @Test
+    void accumulatesRemovalsAndForgetsChildrenAddedBack() throws Exception {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("UPDATE", "p1", plan("inNetwork", "s1:10"), List.of("s2", "s3"), 1L),
+                message("UPDATE", "p1", plan("inNetwork", "s3:10"), List.of("s4"), 2L)));
+
+        PlanQueueMessage message = coalesced.get(0).message();
+        assertEquals("UPDATE", message.getOperation());
+        assertEquals(List.of("s2", "s4"), message.getRemovedObjectIds());
+        assertEquals(MAPPER.readTree(plan("inNetwork", "s1:10", "s3:10")), MAPPER.readTree(message.getJsonData()));
+    }
+
+    @Test
+    void removalDropsChildOfEarlierState() throws Exception {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("INDEX", "p1", plan("inNetwork", "s1:10", "s2:10"), null, 1L),
+                message("UPDATE", "p1", plan("inNetwork"), List.of("s2"), 2L)));
+
+        PlanQueueMessage message = coalesced.get(0).message();
+        assertEquals("INDEX", message.getOperation());
+        assertEquals(MAPPER.readTree(plan("inNetwork", "s1:10")), MAPPER.readTree(message.getJsonData()));
+        assertEquals(List.of("s2"), message.getRemovedObjectIds()); // may have been indexed by an earlier batch
+    }
+
+    @Test
+    void deleteReplacesUpdatesAndDeletesTheChildrenTheyRemoved() {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("UPDATE", "p1", plan("inNetwork", "s1:10"), List.of("s2"), 1L),
+                message("DELETE", "p1", null, List.of("c1", "s1"), 2L)));
+
+        assertEquals(1, coalesced.size());
+        PlanQueueMessage message = coalesced.get(0).message();
+        assertEquals("DELETE", message.getOperation());
+        assertEquals(2L, message.getVersion());
+        assertEquals(Set.of("c1", "s1", "s2"), Set.copyOf(message.getRemovedObjectIds()));
+        assertNull(message.getJsonData());
+        assertEquals(List.of(0, 1), coalesced.get(0).sources());
+    }
+
+    @Test
+    void deleteFollowedByRecreateIsKeptAsBoundary() {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("INDEX", "p1", plan("inNetwork", "s9:10"), null, 3L),
+                message("DELETE", "p1", null, List.of("s1", "s2"), 2L),
+                message("UPDATE", "p1", plan("inNetwork", "s9:20"), null, 4L)));
+
+        assertEquals(2, coalesced.size());
+        assertEquals("DELETE", coalesced.get(0).message().getOperation());
+        assertEquals(List.of("s1", "s2"), coalesced.get(0).message().getRemovedObjectIds());
+        assertEquals(List.of(1), coalesced.get(0).sources());
+
+        assertEquals("INDEX", coalesced.get(1).message().getOperation());
+        assertEquals(4L, coalesced.get(1).message().getVersion());
+        assertEquals(List.of(0, 2), coalesced.get(1).sources());
+    }
+
+    @Test
+    void keepsPlansApartInOrderOfArrival() {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("INDEX", "p2", plan("inNetwork"), null, 5L),
+                message("INDEX", "p1", plan("inNetwork"), null, 1L),
+                message("UPDATE", "p2", plan("outOfNetwork"), null, 6L)));
+
+        assertEquals(List.of("p2", "p1"), coalesced.stream().map(c -> c.message().getObjectId()).toList());
+        assertEquals(List.of(0, 2), coalesced.get(0).sources());
+        assertEquals(List.of(1), coalesced.get(1).sources());
+    }
+
+    @Test
+    void messagesWithoutVersionKeepArrivalOrder() throws Exception {
+        List<PlanIndexWorker.Coalesced> coalesced = worker.coalesce(List.of(
+                message("INDEX", "p1", plan("inNetwork", "s1:10"), null, null),
+                message("UPDATE", "p1", plan("outOfNetwork"), null, null)));
+
+        assertEquals(1, coalesced.size());
+        JsonNode plan = MAPPER.readTree(coalesced.get(0).message().getJsonData());
+        assertEquals("outOfNetwork", plan.get("planType").asText());
+        assertEquals(1, plan.get("linkedPlanServices").size());
+    }
+
+    private static PlanQueueMessage message(String operation, String objectId, String jsonData,
+                                            List<String> removedObjectIds, Long version) {
+        return PlanQueueMessage.builder()
+                .operation(operation)
+                .objectId(objectId)
+                .jsonData(jsonData)
+                .removedObjectIds(removedObjectIds)
+                .version(version)
+                .build();
+    }
+
+    /**
+     * Plan JSON with linkedPlanServices given as "objectId:copay"
+     */
+    private static String plan(String planType, String... services) {
+        List<String> elements = new ArrayList<>();
+        for (String service : services) {
+            String[] parts = service.split(":");
+            elements.add("{\"objectId\":\"" + parts[0] + "\",\"copay\":" + parts[1] + "}");
+        }
+        return "{\"objectId\":\"p1\",\"planType\":\"" + planType + "\",\"linkedPlanServices\":["
+                + String.join(",", elements) + "]}";
+    }
+}